@@ -184,6 +184,35 @@ public class Bol {
         return null;
     }
     
+    /**
+     * Gets the variation name (e.g. "Na01") for a bol ID, or null if the ID has none
+     */
+    public static String getBolVarName(int id) {
+        if (id >= 0 && id < BOLVARS.length) {
+            return BOLVARS[id];
+        }
+        return null;
+    }
+    
+    /**
+     * Finds a bol ID by variation name ("Na01") or base name ("Na" maps to its first variation)
+     */
+    public static int findBolId(String name) {
+        if (name == null) return BOL_NONE;
+        
+        for (int x = 0; x < BOLVARS.length; x++) {
+            if (BOLVARS[x].equalsIgnoreCase(name)) {
+                return x;
+            }
+        }
+        for (int x = 0; x < BOLS.length; x++) {
+            if (BOLS[x].equalsIgnoreCase(name)) {
+                return x * MAXBOLVARS;
+            }
+        }
+        return BOL_NONE;
+    }
+    
     // Getters and Setters
     public String getBolName() { return bolName; }
     public void setBolName(String bolName) { this.bolName = bolName; }
@@ -295,7 +295,7 @@ public class Composition {
     }
     
     /**
-     * Gets the total duration of the composition in milliseconds
+     * Gets the total duration of the composition in milliseconds, with tempo ramps integrated exactly
      */
     @JsonIgnore
     public double getTotalDurationMs() {
@@ -306,13 +306,13 @@ public class Composition {
             for (int loopIndex : loopSequence) {
                 if (loopIndex >= 0 && loopIndex < loops.size()) {
                     Loop loop = loops.get(loopIndex);
-                    totalDuration += loop.getDurationMs() * loop.getRepeatCount();
+                    totalDuration += loop.getTotalDurationMs();
                 }
             }
         } else {
             // Use all loops in order
             for (Loop loop : loops) {
-                totalDuration += loop.getDurationMs() * loop.getRepeatCount();
+                totalDuration += loop.getTotalDurationMs();
             }
         }
         
@@ -21,7 +21,9 @@ public class Loop {
     private int maatraBol = 1;
     private int repeatCount = 1;
     private int bolCount = 0;
-    private int loopBpm = DEFAULT_BPM;
+    private double loopBpm = DEFAULT_BPM;
+    private double endBpm = 0; // tempo reached at the end of the last repeat; 0 keeps loopBpm throughout
+    private TempoRamp.Curve rampCurve = TempoRamp.Curve.LINEAR;
     private int row = 0;
     private int col = 0;
     private int accompaniment = 0;
@@ -143,6 +145,8 @@ public class Loop {
         this.repeatCount = srcLoop.repeatCount;
         this.accompaniment = srcLoop.accompaniment;
         this.loopBpm = srcLoop.loopBpm;
+        this.endBpm = srcLoop.endBpm;
+        this.rampCurve = srcLoop.rampCurve;
         this.loopName = srcLoop.loopName;
         this.note = srcLoop.note;
         
@@ -191,10 +195,13 @@ public class Loop {
     }
     
     /**
-     * Gets the total duration of this loop in milliseconds
+     * Gets the duration of one pass of this loop in milliseconds (the average pass when the tempo ramps)
      */
     @JsonIgnore
     public double getDurationMs() {
+        if (isRamped()) {
+            return getTotalDurationMs() / repeatCount;
+        }
         // Calculate based on BPM and number of beats
         double beatsPerMinute = loopBpm;
         double beatsPerSecond = beatsPerMinute / 60.0;
@@ -203,7 +210,40 @@ public class Loop {
     }
     
     /**
-     * Gets the time per beat in milliseconds
+     * Gets the duration of all repeats of this loop in milliseconds, integrating any tempo ramp
+     */
+    @JsonIgnore
+    public double getTotalDurationMs() {
+        return getTempoRamp().getDurationMs();
+    }
+    
+    /**
+     * Gets the tempo curve over all repeats of this loop, one beat per bol
+     */
+    @JsonIgnore
+    public TempoRamp getTempoRamp() {
+        return new TempoRamp(loopBpm, isRamped() ? endBpm : loopBpm, rampCurve, (double) bolCount * repeatCount);
+    }
+    
+    /**
+     * Sets a tempo ramp from the start BPM to the end BPM over all repeats of this loop
+     */
+    public void setTempoRamp(double startBpm, double endBpm, TempoRamp.Curve curve) {
+        setLoopBpm(startBpm);
+        setEndBpm(endBpm);
+        setRampCurve(curve);
+    }
+    
+    /**
+     * Checks whether the tempo changes while this loop plays
+     */
+    @JsonIgnore
+    public boolean isRamped() {
+        return endBpm > 0 && endBpm != loopBpm;
+    }
+    
+    /**
+     * Gets the time per beat at the start tempo in milliseconds
      */
     @JsonIgnore
     public double getBeatDurationMs() {
@@ -238,8 +278,16 @@ public class Loop {
     
     public int getBolCount() { return bolCount; }
     
-    public int getLoopBpm() { return loopBpm; }
-    public void setLoopBpm(int loopBpm) { this.loopBpm = Math.max(1, loopBpm); }
+    public double getLoopBpm() { return loopBpm; }
+    public void setLoopBpm(double loopBpm) { this.loopBpm = Math.max(1, loopBpm); }
+    
+    public double getEndBpm() { return endBpm; }
+    public void setEndBpm(double endBpm) { this.endBpm = endBpm > 0 ? Math.max(1, endBpm) : 0; }
+    
+    public TempoRamp.Curve getRampCurve() { return rampCurve; }
+    public void setRampCurve(TempoRamp.Curve rampCurve) { 
+        this.rampCurve = rampCurve != null ? rampCurve : TempoRamp.Curve.LINEAR;
+    }
     
     public int getRow() { return row; }
     public void setRow(int row) { this.row = row; }
@@ -267,6 +315,7 @@ public class Loop {
                 ", bolCount=" + bolCount +
                 ", maatraBol=" + maatraBol +
                 ", loopBpm=" + loopBpm +
+                ", endBpm=" + endBpm +
                 ", repeatCount=" + repeatCount +
                 '}';
     }
@@ -212,6 +212,26 @@ public class Sequence {
         return copy;
     }
     
+    /**
+     * Gets a copy of the secondary bol ID sequence
+     */
+    public int[] getBolId2Sequence() {
+        if (bolId2Seq == null) return new int[0];
+        int[] copy = new int[bolSeqCount];
+        System.arraycopy(bolId2Seq, 0, copy, 0, bolSeqCount);
+        return copy;
+    }
+    
+    /**
+     * Gets a copy of the bol variation sequence
+     */
+    public int[] getBolVarSequence() {
+        if (bolVarSeq == null) return new int[0];
+        int[] copy = new int[bolSeqCount];
+        System.arraycopy(bolVarSeq, 0, copy, 0, bolSeqCount);
+        return copy;
+    }
+    
     /**
      * Gets a copy of the bol status sequence
      */
@@ -0,0 +1,96 @@
+package in.oormi.naad.core;
+
+/**
+ * Tempo of a loop over its whole playback, from a start BPM to an end BPM.
+ * Bol times are the integral of the beat period over the curve, computed in closed form,
+ * so a ramp from vilambit to drut places every bol exactly without summing per-bol durations.
+ */
+public class TempoRamp {
+    
+    /**
+     * How the tempo moves from the start to the end BPM, measured in beats
+     */
+    public enum Curve {
+        LINEAR,      // BPM changes by the same amount every beat
+        EXPONENTIAL  // BPM changes by the same ratio every beat, which sounds even to the ear
+    }
+    
+    private final double startBpm;
+    private final double endBpm;
+    private final Curve curve;
+    private final double beats;
+    
+    /**
+     * Creates a ramp over the given number of beats; equal start and end BPM give a steady tempo
+     */
+    public TempoRamp(double startBpm, double endBpm, Curve curve, double beats) {
+        if (!(startBpm > 0) || !(endBpm > 0)) {
+            throw new IllegalArgumentException("Tempo must be positive: " + startBpm + " to " + endBpm + " BPM");
+        }
+        this.startBpm = startBpm;
+        this.endBpm = endBpm;
+        this.curve = curve == null ? Curve.LINEAR : curve;
+        this.beats = Math.max(0.0, beats);
+    }
+    
+    /**
+     * Gets the time of a beat position from the start of the ramp in milliseconds.
+     * Positions past the end continue at the end tempo.
+     */
+    public double getTimeMs(double beat) {
+        if (beat <= 0) return 0.0;
+        if (beat > beats) {
+            return getTimeMs(beats) + (beat - beats) * 60000.0 / endBpm;
+        }
+        if (!isRamped()) {
+            return beat * 60000.0 / startBpm;
+        }
+        if (curve == Curve.EXPONENTIAL) {
+            // bpm(b) = start * r^(b/N): t(b) = 60/start * N/ln(r) * (1 - r^(-b/N))
+            double logRatio = Math.log(endBpm / startBpm);
+            return 60000.0 / startBpm * beats / logRatio * -Math.expm1(-logRatio * beat / beats);
+        }
+        // bpm(b) = start + (end - start) * b/N: t(b) = 60 * N/(end - start) * ln(bpm(b)/start)
+        double slope = (endBpm - startBpm) / beats;
+        return 60000.0 / slope * Math.log1p(slope * beat / startBpm);
+    }
+    
+    /**
+     * Gets the tempo at a beat position in BPM
+     */
+    public double getBpmAt(double beat) {
+        if (!isRamped() || beat <= 0) return startBpm;
+        if (beat >= beats) return endBpm;
+        double fraction = beat / beats;
+        if (curve == Curve.EXPONENTIAL) {
+            return startBpm * Math.pow(endBpm / startBpm, fraction);
+        }
+        return startBpm + (endBpm - startBpm) * fraction;
+    }
+    
+    /**
+     * Gets the duration of the whole ramp in milliseconds
+     */
+    public double getDurationMs() {
+        return getTimeMs(beats);
+    }
+    
+    public boolean isRamped() {
+        return startBpm != endBpm && beats > 0;
+    }
+    
+    public double getStartBpm() { return startBpm; }
+    public double getEndBpm() { return endBpm; }
+    public Curve getCurve() { return curve; }
+    public double getBeats() { return beats; }
+    
+    @Override
+    public String toString() {
+        return "TempoRamp{" +
+                "startBpm=" + startBpm +
+                ", endBpm=" + endBpm +
+                ", curve=" + curve +
+                ", beats=" + beats +
+                '}';
+    }
+}
@@ -0,0 +1,132 @@
+package in.oormi.naad.core;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Assigns sample variations to the bols of a compiled sequence.
+ * Each bol species (Na, Ti, Ge, ...) has up to MAXBOLVARS recorded variations; instead of
+ * striking the same one every time, the assigner fills Sequence.bolVarSeq with a round-robin
+ * or weighted-random choice among the variations that are available. The choices are made
+ * once, when the sequence is compiled, and are repeatable for a given seed.
+ */
+public class VariationAssigner {
+    
+    /**
+     * How variations are chosen
+     */
+    public enum Mode {
+        FIXED,           // keep the variation written in the loop
+        ROUND_ROBIN,     // cycle through the available variations of each species
+        WEIGHTED_RANDOM  // pick at random, in proportion to each variation's weight
+    }
+    
+    public static final long DEFAULT_SEED = 1L;
+    
+    private static final int CAPACITY = Bol.MAXBOLS * Bol.MAXBOLVARS;
+    
+    private final Mode mode;
+    private final long seed;
+    private final IntPredicate available;
+    private final double[] weights = new double[CAPACITY];
+    
+    // Rotation state, carried across calls so consecutive passes keep rotating
+    private final int[] nextIndex = new int[Bol.MAXBOLS];
+    private Random random;
+    private long draws;
+    
+    /**
+     * Creates an assigner choosing among the variations for which available returns true
+     */
+    public VariationAssigner(Mode mode, long seed, IntPredicate available) {
+        this.mode = mode;
+        this.seed = seed;
+        this.available = available;
+        Arrays.fill(weights, 1.0);
+        reset();
+    }
+    
+    /**
+     * Rewinds the rotation and the random generator, so the next assignment repeats the first one
+     */
+    public synchronized void reset() {
+        Arrays.fill(nextIndex, 0);
+        random = new Random(seed);
+        draws = 0;
+    }
+    
+    /**
+     * Copies the assigner with its weights and rotation state, so the copy picks what this one
+     * would pick next without advancing it
+     */
+    public synchronized VariationAssigner copy() {
+        VariationAssigner copy = new VariationAssigner(mode, seed, available);
+        System.arraycopy(weights, 0, copy.weights, 0, weights.length);
+        System.arraycopy(nextIndex, 0, copy.nextIndex, 0, nextIndex.length);
+        // Random has no accessible state, so the copy replays the same number of draws
+        for (long x = 0; x < draws; x++) {
+            copy.random.nextDouble();
+        }
+        copy.draws = draws;
+        return copy;
+    }
+    
+    /**
+     * Sets the relative weight of a variation for weighted-random assignment; zero never picks it
+     */
+    public synchronized void setWeight(int bolId, double weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Variation weight must not be negative: " + weight);
+        }
+        if (bolId >= 0 && bolId < CAPACITY) {
+            weights[bolId] = weight;
+        }
+    }
+    
+    /**
+     * Fills the variation of every position of a sequence, continuing the rotation of earlier calls
+     */
+    public synchronized void assign(Sequence sequence) {
+        for (int x = 0; x < sequence.getBolSeqCount(); x++) {
+            sequence.setBolVariationAt(x, next(sequence.getBolIdAt(x)));
+        }
+    }
+    
+    /**
+     * Chooses the variation to play for one occurrence of a bol
+     */
+    public synchronized int next(int bolId) {
+        if (mode == Mode.FIXED || bolId < 0 || bolId >= CAPACITY) return bolId;
+        
+        int species = bolId / Bol.MAXBOLVARS;
+        int first = species * Bol.MAXBOLVARS;
+        int[] candidates = new int[Bol.MAXBOLVARS];
+        int count = 0;
+        for (int id = first; id < first + Bol.MAXBOLVARS; id++) {
+            if (available.test(id)) candidates[count++] = id;
+        }
+        if (count == 0) return bolId;
+        
+        if (mode == Mode.ROUND_ROBIN) {
+            return candidates[nextIndex[species]++ % count];
+        }
+        
+        double total = 0.0;
+        for (int x = 0; x < count; x++) {
+            total += weights[candidates[x]];
+        }
+        if (total <= 0.0) return candidates[0];
+        double pick = random.nextDouble() * total;
+        draws++;
+        for (int x = 0; x < count; x++) {
+            pick -= weights[candidates[x]];
+            if (pick < 0.0) return candidates[x];
+        }
+        return candidates[count - 1];
+    }
+    
+    public Mode getMode() { return mode; }
+    public long getSeed() { return seed; }
+    public synchronized double getWeight(int bolId) { return bolId >= 0 && bolId < CAPACITY ? weights[bolId] : 0.0; }
+}
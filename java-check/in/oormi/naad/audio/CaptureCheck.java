@@ -0,0 +1,83 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Composition;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end check of the real-time playback path against the offline renderer.
+ * Plays a composition through AudioEngine and its render thread into a CaptureSink, renders the
+ * same composition with OfflineRenderer, and compares the two sample by sample from the frame the
+ * play started at. They share the scheduler, mixer and sample variations, so they may differ only
+ * by the 16-bit encoding of the capture; the check exits with status 1 if any sample differs by
+ * more than MAX_ERROR_LSB steps, or if the engine kept writing to the sink once playback finished.
+ */
+public class CaptureCheck {
+
+    public static final int MAX_ERROR_LSB = 4;
+    public static final long IDLE_WAIT_NANOS = 50_000_000L;
+
+    private CaptureCheck() {
+    }
+
+    /**
+     * Gets the largest difference between a capture and an offline render over the render's frames,
+     * with the capture read from an origin frame on. Offline samples are clipped to the 16-bit range
+     * first, as the engine's encoder clips them. Returns infinity if the capture is too short.
+     */
+    public static double maxError(float[] captured, long originFrame, float[] rendered, int frames, int channels) {
+        long base = originFrame * channels;
+        long count = (long) frames * channels;
+        if (originFrame < 0 || base + count > captured.length) return Double.POSITIVE_INFINITY;
+
+        double maxError = 0.0;
+        for (int i = 0; i < count; i++) {
+            float expected = Math.max(-1.0f, Math.min(32767.0f / 32768.0f, rendered[i]));
+            maxError = Math.max(maxError, Math.abs(captured[(int) base + i] - expected));
+        }
+        return maxError;
+    }
+
+    /**
+     * Usage: CaptureCheck &lt;samplePath&gt; [file.naad]
+     */
+    public static void main(String[] args) throws Exception {
+        SampleBank bank = CheckSupport.loadBank(args, "CaptureCheck");
+        Composition composition = CheckSupport.loadComposition(args, CheckSupport::autoComposed);
+        int channels = bank.getFormat().getChannels();
+
+        CaptureSink sink = new CaptureSink();
+        long originFrame;
+        int capturedFrames;
+        int idleFrames;
+        float[] captured;
+        try (AudioEngine engine = new AudioEngine(bank, sink)) {
+            Timeline timeline = engine.newTimeline();
+            timeline.addComposition(composition);
+            engine.play(timeline);
+            engine.awaitCompletion();
+            originFrame = engine.getPlayOriginFrame();
+
+            // An idle engine must leave an unpaced sink alone
+            capturedFrames = sink.getCapturedFrames();
+            LockSupport.parkNanos(IDLE_WAIT_NANOS);
+            idleFrames = sink.getCapturedFrames() - capturedFrames;
+            captured = sink.toFloats();
+        }
+
+        OfflineRenderer renderer = new OfflineRenderer(bank);
+        Timeline offline = renderer.newTimeline();
+        offline.addComposition(composition);
+        OfflineRenderer.RenderResult result = renderer.render(offline);
+
+        double maxError = maxError(captured, originFrame, result.getData(), result.getFrames(), channels);
+        System.out.printf("Captured %d frames from origin frame %d, offline render %d frames, "
+                        + "%d frames written while idle%n",
+                capturedFrames, originFrame, result.getFrames(), idleFrames);
+        System.out.printf("Largest difference %.3g (%.1f LSB)%n", maxError, maxError * 32768.0);
+        if (!(maxError <= MAX_ERROR_LSB / 32768.0) || idleFrames > 0 || sink.getDroppedFrames() > 0) {
+            System.out.println("FAIL: real-time playback does not match the offline render");
+            System.exit(1);
+        }
+        System.out.println("OK: real-time playback matches the offline render");
+    }
+}
@@ -0,0 +1,48 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Composition;
+import in.oormi.naad.io.CompositionFileHandler;
+import java.util.function.Supplier;
+
+/**
+ * Command-line setup shared by the engine checks and benchmarks, which all take
+ * &lt;samplePath&gt; [file.naad]. Bad arguments, an unreadable composition included, end the
+ * run with status 2, so a script can tell them from a failed check (status 1).
+ */
+final class CheckSupport {
+
+    static final int USAGE_ERROR = 2;
+
+    private CheckSupport() {
+    }
+
+    /**
+     * Loads the bank from the sample path in the first argument, or prints the usage and exits
+     */
+    static SampleBank loadBank(String[] args, String name) {
+        if (args.length < 1) {
+            System.err.println("Usage: " + name + " <samplePath> [file.naad]");
+            System.exit(USAGE_ERROR);
+        }
+        return SampleBank.load(args[0], EngineFormat.DEFAULT);
+    }
+
+    /**
+     * Loads the composition file in the second argument if there is one, and otherwise builds the default
+     */
+    static Composition loadComposition(String[] args, Supplier<Composition> fallback) {
+        Composition composition = args.length > 1
+                ? new CompositionFileHandler().loadComposition(args[1]) : fallback.get();
+        if (composition == null) System.exit(USAGE_ERROR);
+        return composition;
+    }
+
+    /**
+     * Builds a composition with Composition.autoCompose
+     */
+    static Composition autoComposed() {
+        Composition composition = new Composition();
+        composition.autoCompose();
+        return composition;
+    }
+}
@@ -0,0 +1,58 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Composition;
+import in.oormi.naad.core.Loop;
+
+/**
+ * Throughput benchmark of the full real-time playback path: commands, scheduler, mixer, PCM
+ * encoding and the render thread, writing into a free-running NullSink, so it runs on machines
+ * without a sound card. Reports how many times faster than real time the engine renders.
+ */
+public class PlaybackBenchmark {
+
+    public static final int LOOP_REPEATS = 50;
+
+    private PlaybackBenchmark() {
+    }
+
+    /**
+     * Plays a timeline to completion into a free-running sink and returns its realtime factor
+     */
+    public static double run(SampleBank bank, Composition composition) throws Exception {
+        NullSink sink = new NullSink();
+        try (AudioEngine engine = new AudioEngine(bank, sink)) {
+            Timeline timeline = engine.newTimeline();
+            timeline.addComposition(composition);
+
+            long startNanos = System.nanoTime();
+            engine.play(timeline);
+            engine.awaitCompletion();
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+            double audioSeconds = timeline.getDurationMs() / 1000.0;
+            System.out.printf("Played %.1f s of audio (%d frames written) in %.2f s, %d bols%n",
+                    audioSeconds, sink.getFramePosition(), seconds, engine.getJitter().getTotalCount());
+            return seconds > 0 ? audioSeconds / seconds : 0.0;
+        }
+    }
+
+    /**
+     * Builds an automatic composition with every loop repeated LOOP_REPEATS times
+     */
+    private static Composition longComposition() {
+        Composition composition = CheckSupport.autoComposed();
+        for (Loop loop : composition.getLoops()) {
+            loop.setRepeatCount(LOOP_REPEATS);
+        }
+        return composition;
+    }
+
+    /**
+     * Usage: PlaybackBenchmark &lt;samplePath&gt; [file.naad]
+     */
+    public static void main(String[] args) throws Exception {
+        SampleBank bank = CheckSupport.loadBank(args, "PlaybackBenchmark");
+        Composition composition = CheckSupport.loadComposition(args, PlaybackBenchmark::longComposition);
+        System.out.printf("Kernels: %s, realtime factor %.1fx%n", MixKernels.get().getName(), run(bank, composition));
+    }
+}
@@ -0,0 +1,211 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Bol;
+import in.oormi.naad.core.Composition;
+import in.oormi.naad.core.Loop;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Allocation check for the real-time render path.
+ * Plays a long composition through AudioEngine.renderBlock on a dedicated thread, the way the
+ * render thread drives it, and measures that thread's allocated bytes with ThreadMXBean once
+ * the JIT has warmed up. A second pass plays a shorter composition back to back with itself,
+ * crossfading at every join, while tempo, master gain, mute, solo and bol edits are sent between
+ * blocks at both the next block and the next sam; only the renderBlock calls are counted, since
+ * the control calls run on the caller's thread in a real application.
+ * Any allocation per block means the audio thread can be held up by GC, so the check exits with
+ * status 1 unless the measured blocks allocate zero bytes.
+ */
+public class RenderAllocationCheck {
+
+    public static final int WARMUP_BLOCKS = 20000;
+    public static final int MEASURED_BLOCKS = 20000;
+    public static final int MEASURED_WINDOWS = 4;
+    public static final int LOOP_REPEATS = 200;
+    public static final int CHANGE_INTERVAL_BLOCKS = 25;
+    public static final double CROSSFADE_MS = 20.0;
+
+    private RenderAllocationCheck() {
+    }
+
+    /**
+     * Renders warm-up blocks, then returns the bytes allocated by the calling thread over the measured
+     * blocks: the least of MEASURED_WINDOWS equal windows, scaled to the whole run. An allocating render
+     * path allocates in every window; the JVM now and then charges a few hundred bytes of its own to
+     * one window (a recompile caught mid-read), which the interpreter-only (-Xint) run never shows.
+     */
+    public static long measure(AudioEngine engine, Timeline timeline, int warmupBlocks, int measuredBlocks) {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        float[] mix = new float[AudioEngine.BLOCK_FRAMES * engine.getFormat().getChannels()];
+        byte[] pcm = new byte[mix.length * 2];
+
+        engine.submit(timeline);
+        for (int x = 0; x < warmupBlocks; x++) {
+            engine.renderBlock(mix, pcm);
+        }
+
+        // Reading the counter may itself allocate, so the cost of an empty measurement is subtracted
+        long overhead = threads.getCurrentThreadAllocatedBytes();
+        overhead = threads.getCurrentThreadAllocatedBytes() - overhead;
+
+        long least = Long.MAX_VALUE;
+        for (int window = 0; window < MEASURED_WINDOWS; window++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int x = 0; x < measuredBlocks / MEASURED_WINDOWS; x++) {
+                engine.renderBlock(mix, pcm);
+            }
+            least = Math.min(least, threads.getCurrentThreadAllocatedBytes() - before - overhead);
+        }
+        return least * MEASURED_WINDOWS;
+    }
+
+    /**
+     * Renders warm-up blocks, then returns the bytes allocated inside renderBlock over the measured blocks,
+     * taken from the least of MEASURED_WINDOWS windows as in measure, while a live change or a queued
+     * timeline is sent every CHANGE_INTERVAL_BLOCKS blocks. The two timelines take turns following
+     * each other with a crossfade at every join.
+     */
+    public static long measureLiveChanges(AudioEngine engine, Timeline first, Timeline second,
+            int warmupBlocks, int measuredBlocks) {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        float[] mix = new float[AudioEngine.BLOCK_FRAMES * engine.getFormat().getChannels()];
+        byte[] pcm = new byte[mix.length * 2];
+
+        engine.setCrossfadeMs(CROSSFADE_MS);
+        engine.submit(first);
+        for (int x = 0; x < warmupBlocks; x++) {
+            sendChange(engine, first, second, x);
+            engine.renderBlock(mix, pcm);
+        }
+
+        long overhead = threads.getCurrentThreadAllocatedBytes();
+        overhead = threads.getCurrentThreadAllocatedBytes() - overhead;
+
+        long least = Long.MAX_VALUE;
+        int block = warmupBlocks;
+        for (int window = 0; window < MEASURED_WINDOWS; window++) {
+            long allocated = 0;
+            for (int x = 0; x < measuredBlocks / MEASURED_WINDOWS; x++, block++) {
+                // Only renderBlock is counted; the control calls belong to the caller's thread
+                sendChange(engine, first, second, block);
+                long before = threads.getCurrentThreadAllocatedBytes();
+                engine.renderBlock(mix, pcm);
+                allocated += threads.getCurrentThreadAllocatedBytes() - before - overhead;
+            }
+            least = Math.min(least, allocated);
+        }
+        return least * MEASURED_WINDOWS;
+    }
+
+    /**
+     * Sends the change due before a block, cycling through every kind of live change
+     */
+    private static void sendChange(AudioEngine engine, Timeline first, Timeline second, int block) {
+        if (block % CHANGE_INTERVAL_BLOCKS != 0) return;
+
+        int step = block / CHANGE_INTERVAL_BLOCKS;
+        // Alternate between the two timelines, so changes reach both the playing and the queued one
+        Timeline target = (step / 16) % 2 == 0 ? first : second;
+        int segment = step % target.getSegmentCount();
+        Timeline.Segment loop = target.getSegment(segment);
+        int position = step % loop.getBolCount();
+        // Each kind of change alternates between the next block and the next sam from one cycle to the next
+        EngineCommand.ApplyAt applyAt = (step + step / 8) % 2 == 0 ? EngineCommand.ApplyAt.NEXT_BLOCK
+                : EngineCommand.ApplyAt.NEXT_SAM;
+
+        int kind = step % 8;
+        if (kind == 0 || kind == 1) {
+            engine.setTempoScale(kind == 0 ? 1.25 : 1.0, applyAt);
+        } else if (kind == 2) {
+            engine.setMasterGain(step % 16 < 8 ? 0.5f : 1.0f);
+        } else if (kind == 3) {
+            engine.setMuted(target, segment, !loop.isMuted(), applyAt);
+        } else if (kind == 4 || kind == 5) {
+            engine.editBol(target, segment, position, loop.getBolIdAt(position), Bol.BOL_NONE, Bol.BOL_NORMAL,
+                    applyAt);
+        } else if (kind == 6) {
+            engine.setSolo(target, segment, !loop.isSolo(), applyAt);
+        } else {
+            // Only one timeline waits at a time, so this keeps a follower queued at every join
+            engine.submitNext(target == first ? second : first);
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            throw new UnsupportedOperationException("Thread allocation counters are not available on this JVM");
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("Thread allocation counters are not supported on this JVM");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /**
+     * Builds a composition long enough to keep the engine busy for every block that is rendered
+     */
+    private static Composition longComposition() {
+        Composition composition = new Composition();
+        composition.autoCompose();
+        for (Loop loop : composition.getLoops()) {
+            loop.setRepeatCount(LOOP_REPEATS);
+        }
+        return composition;
+    }
+
+    /**
+     * Builds a composition that plays each loop once, so timelines follow each other many times over a run
+     */
+    private static Composition shortComposition() {
+        Composition composition = new Composition();
+        composition.autoCompose();
+        for (Loop loop : composition.getLoops()) {
+            loop.setRepeatCount(1);
+        }
+        return composition;
+    }
+
+    /**
+     * Usage: RenderAllocationCheck &lt;samplePath&gt; [file.naad]
+     */
+    public static void main(String[] args) throws Exception {
+        SampleBank bank = CheckSupport.loadBank(args, "RenderAllocationCheck");
+        Composition composition = CheckSupport.loadComposition(args, RenderAllocationCheck::longComposition);
+        AudioEngine engine = new AudioEngine(bank);
+        Timeline timeline = engine.newTimeline();
+        timeline.addComposition(composition);
+
+        long[] allocated = new long[2];
+        // Measured on a fresh thread, like the engine's own render thread
+        Thread thread = new Thread(() -> allocated[0] = measure(engine, timeline, WARMUP_BLOCKS, MEASURED_BLOCKS),
+                "naad-audio-check");
+        thread.start();
+        thread.join();
+
+        AudioEngine liveEngine = new AudioEngine(bank);
+        Timeline first = liveEngine.newTimeline();
+        first.addComposition(shortComposition());
+        Timeline second = liveEngine.newTimeline();
+        second.addComposition(shortComposition());
+        thread = new Thread(() -> allocated[1] = measureLiveChanges(liveEngine, first, second,
+                WARMUP_BLOCKS, MEASURED_BLOCKS), "naad-audio-check");
+        thread.start();
+        thread.join();
+
+        double audioSeconds = bank.getFormat().framesToMs((long) MEASURED_BLOCKS * AudioEngine.BLOCK_FRAMES) / 1000.0;
+        System.out.printf("Kernels: %s, timeline: %.0f s, measured %d blocks (%.0f s of audio)%n",
+                MixKernels.get().getName(), timeline.getDurationMs() / 1000.0, MEASURED_BLOCKS, audioSeconds);
+        System.out.printf("Render thread allocated %d bytes (%.2f bytes per block)%n",
+                allocated[0], allocated[0] / (double) MEASURED_BLOCKS);
+        System.out.printf("With live changes, joins of %.0f s timelines and %.0f ms crossfades: %d bytes (%.2f bytes per block)%n",
+                first.getDurationMs() / 1000.0, CROSSFADE_MS, allocated[1], allocated[1] / (double) MEASURED_BLOCKS);
+        if (allocated[0] > 0 || allocated[1] > 0) {
+            System.out.println("FAIL: the render path allocates");
+            System.exit(1);
+        }
+        System.out.println("OK: the render path is allocation-free");
+    }
+}
@@ -1,8 +1,19 @@
 package in.oormi.naad;
 
+import in.oormi.naad.audio.AudioEngine;
+import in.oormi.naad.audio.AudioSink;
+import in.oormi.naad.audio.EngineFormat;
+import in.oormi.naad.audio.JavaSoundSink;
+import in.oormi.naad.audio.JitterHistogram;
+import in.oormi.naad.audio.NullSink;
+import in.oormi.naad.audio.PackedBank;
+import in.oormi.naad.audio.SampleBankLoader;
 import in.oormi.naad.core.*;
 import in.oormi.naad.io.*;
 import in.oormi.naad.util.*;
+import javax.sound.sampled.LineUnavailableException;
+import java.io.File;
+import java.nio.file.Paths;
 
 /**
  * Main application class for Naad Tabla Composer.
@@ -14,6 +25,7 @@ public class NaadApplication {
     private CompositionFileHandler compositionFileHandler;
     private LoopFileHandler loopFileHandler;
     private Composition currentComposition;
+    private SampleBankLoader sampleBankLoader;
     
     public NaadApplication() {
         initialize();
@@ -31,6 +43,12 @@ public class NaadApplication {
         System.out.println("Settings Manager initialized");
         System.out.println("File handlers initialized");
         
+        // Map (or decode and pack) the sample bank in the background; only the first playback waits for it
+        sampleBankLoader = new SampleBankLoader(getSamplePath(), EngineFormat.DEFAULT,
+                Paths.get(getSamplePath(), PackedBank.DEFAULT_FILE_NAME));
+        sampleBankLoader.start();
+        System.out.println("Sample bank loading started");
+        
         // Create a default composition
         createNewComposition();
         
@@ -111,6 +129,8 @@ public class NaadApplication {
                           (currentComposition != null ? currentComposition.getCompositionName() : "None"));
         System.out.println("Audio Sample Path: " + 
                           settingsManager.getStringSetting("audio.samplePath", "./samples"));
+        System.out.println("Audio Output: " + 
+                          settingsManager.getStringSetting("audio.sink", "javasound"));
         System.out.println("Default BPM: " + 
                           settingsManager.getIntSetting("audio.defaultBpm", 180));
         System.out.println("Auto-backup enabled: " + 
@@ -118,31 +138,64 @@ public class NaadApplication {
     }
     
     
-    public static void main(String[] args) {
-        com.naad.sound.SoundLoopPlayer.startLoop();
-        try {
-            java.io.File soundFolder = new java.io.File("src/main/resources/sounds");
-            java.io.File[] files = soundFolder.listFiles((dir, name) -> name.toLowerCase().endsWith(".wav"));
-
-            if (files != null) {
-                for (java.io.File file : files) {
-                    System.out.println("Playing: " + file.getName());
-                    javax.sound.sampled.AudioInputStream audioStream = javax.sound.sampled.AudioSystem.getAudioInputStream(file);
-                    javax.sound.sampled.Clip clip = javax.sound.sampled.AudioSystem.getClip();
-                    clip.open(audioStream);
-                    clip.start();
-                    Thread.sleep(clip.getMicrosecondLength() / 1000);
-                    clip.close();
-                }
-            } else {
-                System.out.println("No sound files found in sounds folder.");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Gets the configured sample directory, falling back to the working directory if it does not exist
+     */
+    public String getSamplePath() {
+        String samplePath = settingsManager.getStringSetting("audio.samplePath", AudioEngine.DEFAULT_SAMPLE_PATH);
+        if (!new File(samplePath).isDirectory()) {
+            samplePath = AudioEngine.DEFAULT_SAMPLE_PATH;
         }
+        return samplePath;
     }
-
-}
+    
+    /**
+     * Creates the output configured by audio.sink: "null" plays in real time to no device,
+     * for headless machines; anything else uses the default sound card line
+     */
+    public AudioSink createAudioSink() {
+        String sink = settingsManager.getStringSetting("audio.sink", "javasound");
+        return "null".equalsIgnoreCase(sink) ? new NullSink(true) : new JavaSoundSink();
+    }
+    
+    /**
+     * Plays the current composition through the audio engine and prints its onset timing
+     */
+    public void playCurrentComposition() {
+        System.out.println("\n=== Playback ===");
+        
+        try (AudioEngine engine = new AudioEngine(sampleBankLoader.await(), createAudioSink())) {
+            System.out.println("Samples loaded: " + engine.getSampleBank());
+            System.out.printf("Sample bank ready after %.1f ms%n", sampleBankLoader.getTimeToReadyMs());
+            engine.play(currentComposition);
+            engine.awaitCompletion();
+            printTimingReport(engine.getJitter());
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.err.println("Audio output unavailable: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public static void printTimingReport(JitterHistogram jitter) {
+        System.out.println("\n=== Onset Timing ===");
+        System.out.println("Bols played: " + jitter.getTotalCount());
+        System.out.printf("Onset jitter p50: %.3f ms%n", jitter.getP50() / 1000.0);
+        System.out.printf("Onset jitter p99: %.3f ms%n", jitter.getP99() / 1000.0);
+        System.out.printf("Onset jitter max: %.3f ms%n", jitter.getMax() / 1000.0);
+    }
+    
+    public static void main(String[] args) {
+        try {
+            // Initialize the application
+            NaadApplication app = new NaadApplication();
+            
+            // Demonstrate core functionality
+            app.demonstrateCore();
+            app.showStatus();
+            
+            // Play the demo composition and report how closely bols kept to their schedule
+            app.playCurrentComposition();
             
         } catch (Exception e) {
             System.err.println("Application error: " + e.getMessage());
@@ -156,4 +209,5 @@ public class NaadApplication {
     public SettingsManager getSettingsManager() { return settingsManager; }
     public CompositionFileHandler getCompositionFileHandler() { return compositionFileHandler; }
     public LoopFileHandler getLoopFileHandler() { return loopFileHandler; }
+    public SampleBankLoader getSampleBankLoader() { return sampleBankLoader; }
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Bol;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Accent gains of a taal by bol status (normal, Sam, Tali, Khali), separately for the dayan and
+ * the bayan: the bayan gains apply to the additional layer of compound bols and to bayan bols
+ * (Ga, Ge, Ke) played on their own. By default Sam is struck harder, Tali slightly harder, and
+ * the bayan is left out on Khali, as it traditionally is.
+ *
+ * Profiles are applied when a timeline is compiled: each segment keeps a gain per bol position,
+ * so the render thread only reads a precomputed value per event.
+ */
+public class AccentProfile {
+
+    /** Every status at unity gain, i.e. no accents */
+    public static final AccentProfile FLAT = fromDb("flat",
+            new double[] {0.0, 0.0, 0.0, 0.0},
+            new double[] {0.0, 0.0, 0.0, 0.0});
+
+    /** Sam +3 dB, Tali +1 dB, bayan muted on Khali; suits theka-based taals such as Teentaal */
+    public static final AccentProfile DEFAULT = fromDb("default",
+            new double[] {0.0, 3.0, 1.0, 0.0},
+            new double[] {0.0, 3.0, 1.0, Double.NEGATIVE_INFINITY});
+
+    /** Rupak begins on Khali, so its Sam is only softened on the bayan instead of muted */
+    public static final AccentProfile RUPAK = fromDb("rupak",
+            new double[] {0.0, 2.0, 1.0, 0.0},
+            new double[] {0.0, -6.0, 1.0, -6.0});
+
+    private static final Map<String, AccentProfile> TAALS = new ConcurrentHashMap<>();
+    // Bayan bols are the last species of the bol table, from Ga on
+    private static final int FIRST_BAYAN_SPECIES = Bol.findBolId("Ga") / Bol.MAXBOLVARS;
+
+    static {
+        for (String taal : new String[] {"teentaal", "jhaptaal", "ektaal", "dadra", "keherwa"}) {
+            TAALS.put(taal, DEFAULT);
+        }
+        TAALS.put("rupak", RUPAK);
+    }
+
+    private final String name;
+    private final float[] primaryGains;
+    private final float[] additionalGains;
+
+    /**
+     * Creates a profile from linear gains indexed by bol status (BOL_NORMAL to BOL_KHALI)
+     */
+    public AccentProfile(String name, float[] primaryGains, float[] additionalGains) {
+        if (primaryGains.length != Bol.MAXSTATUS || additionalGains.length != Bol.MAXSTATUS) {
+            throw new IllegalArgumentException("Accent profile needs " + Bol.MAXSTATUS + " gains per layer");
+        }
+        for (int x = 0; x < Bol.MAXSTATUS; x++) {
+            if (!(primaryGains[x] >= 0) || !(additionalGains[x] >= 0)) {
+                throw new IllegalArgumentException("Accent gains must not be negative: " + name);
+            }
+        }
+        this.name = name;
+        this.primaryGains = primaryGains.clone();
+        this.additionalGains = additionalGains.clone();
+    }
+
+    /**
+     * Creates a profile from gains in dB indexed by bol status; negative infinity mutes a layer
+     */
+    public static AccentProfile fromDb(String name, double[] primaryDb, double[] additionalDb) {
+        return new AccentProfile(name, toLinear(primaryDb), toLinear(additionalDb));
+    }
+
+    private static float[] toLinear(double[] db) {
+        float[] gains = new float[db.length];
+        for (int x = 0; x < db.length; x++) {
+            gains[x] = (float) Math.pow(10.0, db[x] / 20.0);
+        }
+        return gains;
+    }
+
+    /**
+     * Gets the profile registered for a taal name (case-insensitive), or DEFAULT if there is none
+     */
+    public static AccentProfile forTaal(String taal) {
+        if (taal == null) return DEFAULT;
+        return TAALS.getOrDefault(taal.toLowerCase(Locale.ROOT), DEFAULT);
+    }
+
+    /**
+     * Registers or replaces the accent profile of a taal
+     */
+    public static void register(String taal, AccentProfile profile) {
+        TAALS.put(taal.toLowerCase(Locale.ROOT), profile);
+    }
+
+    /**
+     * Gets the gain of the primary bol for a status; unknown statuses play at unity
+     */
+    public float getPrimaryGain(int status) {
+        return status >= 0 && status < primaryGains.length ? primaryGains[status] : 1.0f;
+    }
+
+    /**
+     * Gets the gain of a bol played as the primary stroke: bayan bols take the bayan gain
+     */
+    public float getPrimaryGain(int bolId, int status) {
+        return isBayan(bolId) ? getAdditionalGain(status) : getPrimaryGain(status);
+    }
+
+    /**
+     * Checks whether a bol ID is a bayan (left drum) stroke
+     */
+    public static boolean isBayan(int bolId) {
+        return bolId >= FIRST_BAYAN_SPECIES * Bol.MAXBOLVARS && bolId < Bol.MAXBOLS * Bol.MAXBOLVARS;
+    }
+
+    /**
+     * Gets the gain of the additional (bayan) layer for a status; unknown statuses play at unity
+     */
+    public float getAdditionalGain(int status) {
+        return status >= 0 && status < additionalGains.length ? additionalGains[status] : 1.0f;
+    }
+
+    public String getName() { return name; }
+
+    @Override
+    public String toString() {
+        return "AccentProfile{" +
+                "name='" + name + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,609 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Composition;
+import in.oormi.naad.core.Loop;
+import in.oormi.naad.core.Sequence;
+import in.oormi.naad.core.VariationAssigner;
+import javax.sound.sampled.LineUnavailableException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Real-time playback engine.
+ * Keeps one output sink open and continuously writes mixed blocks to it; by default a Java Sound
+ * line whose blocking write paces rendering, so bol timing follows the audio clock. With a
+ * NullSink or CaptureSink the same path runs on machines without a sound card.
+ * A lookahead scheduler queues onsets against the engine's frame counter, never the OS timer.
+ * Control threads reach the render thread only through a lock-free command ring, so the
+ * render loop never takes a lock or allocates.
+ * A timeline sent with playNext is queued while another plays and starts on the frame the other
+ * one ends, so consecutive loops join without a gap; an optional crossfade fades the tails of
+ * one loop as the next begins.
+ * Tempo, master gain, mutes, solos and bol edits can be changed while playing. Each change is
+ * posted as a command and takes effect at the next block or the next sam: queued events from
+ * that frame on are dropped and rescheduled with the change, so ringing voices are not cut and
+ * nothing is recompiled.
+ */
+public class AudioEngine implements AutoCloseable {
+
+    public static final int BLOCK_FRAMES = 512;
+    public static final String DEFAULT_SAMPLE_PATH = ".";
+    public static final int COMMAND_CAPACITY = 64;
+    private static final long COMPLETION_POLL_NANOS = 1_000_000L;
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+
+    private final EngineFormat format;
+    private final VoicePool voices;
+    private final EventQueue queue = new EventQueue();
+    private final Mixer mixer;
+    // The bank and composites of the latest setSampleBank; the render thread switches to them in order
+    private volatile SampleBank samples;
+    private volatile CompositeCache composites;
+    private final MixKernels kernels = MixKernels.get();
+    private final SpscRing<EngineCommand> commands = new SpscRing<>(COMMAND_CAPACITY, EngineCommand::new);
+
+    private final AudioSink sink;
+    private Thread renderThread;
+    private volatile boolean sinkOpen = false;
+    private double lookaheadMs = EventScheduler.DEFAULT_LOOKAHEAD_MS;
+    private volatile VariationAssigner.Mode variationMode = VariationAssigner.Mode.ROUND_ROBIN;
+    private volatile long variationSeed = VariationAssigner.DEFAULT_SEED;
+    private volatile boolean running = false;
+    private volatile long framePosition = 0;
+    private volatile long playOriginFrame = -1;
+
+    // Owned by the render thread: the timeline being played and where the output stood when it began
+    private EventScheduler scheduler;
+    private long schedulerSerial = 0;
+    private long slipAtOrigin = 0;
+    // Owned by the render thread: the timeline waiting to follow the current one
+    private EventScheduler nextScheduler;
+    private long nextSerial = 0;
+    // Owned by the render thread: live settings, and changes held back until the next sam
+    private final EngineCommand[] deferred = new EngineCommand[COMMAND_CAPACITY];
+    private int deferredCount = 0;
+    private long samFrame = 0;
+    private double tempoScale = 1.0;
+    private float masterGain = 1.0f;
+    private float targetMasterGain = 1.0f;
+
+    // Serial of the last command sent (producer side) and of the last one fully played or stopped
+    private long requestedSerial = 0;
+    private volatile long sentSerial = 0;
+    private volatile long completedSerial = 0;
+
+    public AudioEngine() {
+        this(DEFAULT_SAMPLE_PATH, EngineFormat.DEFAULT);
+    }
+
+    public AudioEngine(String samplePath) {
+        this(samplePath, EngineFormat.DEFAULT);
+    }
+
+    public AudioEngine(String samplePath, EngineFormat format) {
+        this(SampleBank.load(samplePath, format));
+    }
+
+    public AudioEngine(SampleBank samples) {
+        this(samples, new VoicePool());
+    }
+
+    public AudioEngine(SampleBank samples, VoicePool voices) {
+        this(samples, voices, new JavaSoundSink());
+    }
+
+    /**
+     * Creates an engine that plays into a sink instead of the default sound card line
+     */
+    public AudioEngine(SampleBank samples, AudioSink sink) {
+        this(samples, new VoicePool(), sink);
+    }
+
+    public AudioEngine(SampleBank samples, VoicePool voices, AudioSink sink) {
+        this.samples = samples;
+        this.voices = voices;
+        this.sink = sink;
+        this.format = samples.getFormat();
+        this.composites = new CompositeCache(samples);
+        this.mixer = new Mixer(samples, voices, queue, composites);
+        for (int x = 0; x < deferred.length; x++) {
+            deferred[x] = new EngineCommand();
+        }
+    }
+
+    /**
+     * Opens the output sink and starts the render thread
+     */
+    public synchronized void start() throws LineUnavailableException {
+        if (running) return;
+
+        sink.open(format, BLOCK_FRAMES * 4);
+        sinkOpen = true;
+
+        running = true;
+        renderThread = new Thread(this::renderLoop, "naad-audio");
+        renderThread.setDaemon(true);
+        renderThread.setPriority(Thread.MAX_PRIORITY);
+        renderThread.start();
+    }
+
+    /**
+     * Plays all bols of a loop at the loop's tempo
+     */
+    public void play(Loop loop) throws LineUnavailableException {
+        Timeline timeline = newTimeline();
+        timeline.addLoop(loop);
+        play(timeline);
+    }
+
+    /**
+     * Plays every loop of a composition back to back
+     */
+    public void play(Composition composition) throws LineUnavailableException {
+        Timeline timeline = newTimeline();
+        timeline.addComposition(composition);
+        play(timeline);
+    }
+
+    /**
+     * Starts playing a compiled sequence, replacing whatever is playing
+     */
+    public void play(Sequence sequence, double bpm) throws LineUnavailableException {
+        Timeline timeline = newTimeline();
+        timeline.addSequence(sequence, format.framesPerBeat(bpm));
+        play(timeline);
+    }
+
+    /**
+     * Creates an empty timeline whose sample variations are assigned among those in this engine's bank.
+     * Every timeline starts from the same seed, so a composition sounds the same each time it is played.
+     */
+    public Timeline newTimeline() {
+        Timeline timeline = new Timeline(format);
+        timeline.setVariationAssigner(samples.newVariationAssigner(variationMode, variationSeed));
+        return timeline;
+    }
+
+    /**
+     * Starts playing a timeline at the next block boundary, replacing whatever is playing.
+     * Compound bols that recur in it are premixed first.
+     */
+    public void play(Timeline timeline) throws LineUnavailableException {
+        start();
+        submit(timeline);
+    }
+
+    /**
+     * Queues a timeline for the render loop without opening the sink, for driving renderBlock directly
+     */
+    void submit(Timeline timeline) {
+        composites.prepare(timeline);
+        send(EngineCommand.Type.PLAY, new EventScheduler(timeline, lookaheadMs));
+    }
+
+    /**
+     * Plays a loop right after whatever is playing, with its first bol one beat after the last one
+     */
+    public void playNext(Loop loop) throws LineUnavailableException {
+        Timeline timeline = newTimeline();
+        timeline.addLoop(loop);
+        playNext(timeline);
+    }
+
+    /**
+     * Queues a timeline to start on the exact frame the current one ends; its events are scheduled
+     * ahead of that frame like any others, so the join is gapless. Starts at the next block if
+     * nothing is playing. Only one timeline waits at a time: queuing another replaces it.
+     */
+    public void playNext(Timeline timeline) throws LineUnavailableException {
+        start();
+        submitNext(timeline);
+    }
+
+    /**
+     * Queues a timeline to follow the current one without opening the sink, for driving renderBlock directly
+     */
+    void submitNext(Timeline timeline) {
+        composites.prepare(timeline);
+        send(EngineCommand.Type.PLAY_NEXT, new EventScheduler(timeline, lookaheadMs));
+    }
+
+    /**
+     * Blocks until everything sent so far has finished ringing out or was stopped
+     */
+    public void awaitCompletion() throws InterruptedException {
+        long target = sentSerial;
+        while (completedSerial < target && running) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            LockSupport.parkNanos(COMPLETION_POLL_NANOS);
+        }
+    }
+
+    /**
+     * Stops the current timeline and silences ringing voices; the sink stays open
+     */
+    public void stop() {
+        if (running) send(EngineCommand.Type.STOP, null);
+    }
+
+    /**
+     * Hands a command to the render thread. Control threads are serialized here so the ring
+     * keeps a single producer; if it is full, the caller waits for the render thread to drain it.
+     */
+    private synchronized void send(EngineCommand.Type type, EventScheduler next) {
+        EngineCommand command = claim();
+        if (command == null) return;
+        command.set(type, next, ++requestedSerial);
+        commands.publish();
+        sentSerial = requestedSerial;
+    }
+
+    /**
+     * Hands a live change to the render thread; changes do not count towards awaitCompletion
+     */
+    private synchronized void sendChange(EngineCommand.Type type, EngineCommand.ApplyAt applyAt, Timeline timeline,
+            int segment, double value, boolean enabled, int position, int[] variations, int bolId2, float gain, float gain2) {
+        EngineCommand command = claim();
+        if (command == null) return;
+        command.setChange(type, applyAt, timeline, segment, value, enabled);
+        command.setBol(position, variations, bolId2, gain, gain2);
+        command.serial = requestedSerial;
+        commands.publish();
+    }
+
+    /**
+     * Switches to another bank of samples from the next block on, e.g. a newer snapshot from a
+     * SampleCache. The bank must not be changed afterwards, as the render thread reads it without
+     * locking. Composites are premixed again from it, at the current layer gains, as timelines are
+     * played; until then compound bols play on two voices.
+     */
+    public synchronized void setSampleBank(SampleBank bank) {
+        EngineFormat other = bank.getFormat();
+        if (other.getSampleRate() != format.getSampleRate() || other.getChannels() != format.getChannels()) {
+            throw new IllegalArgumentException("Sample bank format " + other + " does not match the engine's " + format);
+        }
+        CompositeCache next = new CompositeCache(bank);
+        next.setLayerGains(composites.getPrimaryGain(), composites.getAdditionalGain());
+
+        EngineCommand command = claim();
+        if (command == null) return;
+        command.setChange(EngineCommand.Type.SAMPLES, EngineCommand.ApplyAt.NEXT_BLOCK, null, 0, 0.0, false);
+        command.setSamples(bank, next);
+        command.serial = requestedSerial;
+        samples = bank;
+        composites = next;
+        commands.publish();
+    }
+
+    private EngineCommand claim() {
+        EngineCommand command;
+        while ((command = commands.claim()) == null) {
+            if (!running) return null;
+            LockSupport.parkNanos(COMPLETION_POLL_NANOS);
+        }
+        return command;
+    }
+
+    /**
+     * Scales the tempo of everything played from the given point on, including timelines played
+     * later: 2.0 plays twice as fast. Loops keep their tempos relative to each other.
+     */
+    public void setTempoScale(double scale, EngineCommand.ApplyAt applyAt) {
+        if (!(scale > 0) || Double.isInfinite(scale)) {
+            throw new IllegalArgumentException("Tempo scale must be positive: " + scale);
+        }
+        sendChange(EngineCommand.Type.TEMPO, applyAt, null, 0, scale, false, 0, null, 0, 0.0f, 0.0f);
+    }
+
+    /**
+     * Sets the tempo so that a segment of a timeline plays at the given BPM (its average BPM if it ramps);
+     * the tempo of every other loop scales with it
+     */
+    public void setBpm(Timeline timeline, int segment, double bpm, EngineCommand.ApplyAt applyAt) {
+        if (!(bpm > 0)) {
+            throw new IllegalArgumentException("BPM must be positive: " + bpm);
+        }
+        setTempoScale(timeline.getSegment(segment).getFramesPerBol() / format.framesPerBeat(bpm), applyAt);
+    }
+
+    /**
+     * Ramps the output level to a gain over the next block, so the change does not click
+     */
+    public void setMasterGain(float gain) {
+        if (!(gain >= 0) || Float.isInfinite(gain)) {
+            throw new IllegalArgumentException("Master gain must not be negative: " + gain);
+        }
+        sendChange(EngineCommand.Type.MASTER_GAIN, EngineCommand.ApplyAt.NEXT_BLOCK, null, 0, gain, false,
+                0, null, 0, 0.0f, 0.0f);
+    }
+
+    /**
+     * Mutes or unmutes a loop (segment) of a playing or queued timeline
+     */
+    public void setMuted(Timeline timeline, int segment, boolean muted, EngineCommand.ApplyAt applyAt) {
+        checkSegment(timeline, segment);
+        sendChange(EngineCommand.Type.MUTE, applyAt, timeline, segment, 0.0, muted, 0, null, 0, 0.0f, 0.0f);
+    }
+
+    /**
+     * Solos or unsolos a loop (segment) of a playing or queued timeline
+     */
+    public void setSolo(Timeline timeline, int segment, boolean solo, EngineCommand.ApplyAt applyAt) {
+        checkSegment(timeline, segment);
+        sendChange(EngineCommand.Type.SOLO, applyAt, timeline, segment, 0.0, solo, 0, null, 0, 0.0f, 0.0f);
+    }
+
+    /**
+     * Replaces the bol at a position of a loop (segment) of a playing or queued timeline, in every
+     * repeat. The accent gains are looked up from the status in the segment's accent profile, and
+     * each pass plays the variation the timeline's assigner picks for it.
+     */
+    public void editBol(Timeline timeline, int segment, int position, int bolId, int bolId2, int status,
+            EngineCommand.ApplyAt applyAt) {
+        checkSegment(timeline, segment);
+        Timeline.Segment target = timeline.getSegment(segment);
+        if (position < 0 || position >= target.getBolCount()) {
+            throw new IllegalArgumentException("Bol position out of range: " + position);
+        }
+        AccentProfile accents = target.getAccents();
+        int[] variations = timeline.assignVariations(target, bolId);
+        sendChange(EngineCommand.Type.EDIT_BOL, applyAt, timeline, segment, 0.0, false, position, variations, bolId2,
+                accents.getPrimaryGain(bolId, status), accents.getAdditionalGain(status));
+    }
+
+    private static void checkSegment(Timeline timeline, int segment) {
+        if (segment < 0 || segment >= timeline.getSegmentCount()) {
+            throw new IllegalArgumentException("Segment out of range: " + segment);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (renderThread != null) {
+            try {
+                renderThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            renderThread = null;
+        }
+        if (sinkOpen) {
+            sink.drain();
+            sink.close();
+            sinkOpen = false;
+        }
+    }
+
+    private void renderLoop() {
+        float[] mix = new float[BLOCK_FRAMES * format.getChannels()];
+        byte[] pcm = new byte[mix.length * 2];
+        boolean paced = sink.isPaced();
+        while (running) {
+            if (!paced && isIdle()) {
+                // Nothing to play: the clock stands still until a command arrives, rather than
+                // writing silence to a sink that would take it as fast as it can be rendered
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            renderBlock(mix, pcm);
+            sink.write(pcm, 0, pcm.length);
+        }
+    }
+
+    /**
+     * Checks on the render thread whether a block would only be silence: no timeline playing or
+     * queued, no voice ringing and no command waiting
+     */
+    private boolean isIdle() {
+        return scheduler == null && nextScheduler == null && commands.peek() == null && mixer.isIdle();
+    }
+
+    /**
+     * Applies pending commands and renders the next block into mix and its 16-bit encoding into pcm.
+     * Runs once per block on the render thread and must not allocate or block.
+     */
+    void renderBlock(float[] mix, byte[] pcm) {
+        long clock = framePosition;
+        Arrays.fill(mix, 0.0f);
+
+        EngineCommand command;
+        while ((command = commands.peek()) != null) {
+            // Plain comparisons: an enum switch would load a helper class, and allocate, on first use
+            if (command.type == EngineCommand.Type.PLAY
+                    || (command.type == EngineCommand.Type.PLAY_NEXT && scheduler == null)) {
+                queue.clear();
+                scheduler = command.scheduler;
+                scheduler.setTempoScale(tempoScale, clock);
+                scheduler.start(clock);
+                playOriginFrame = clock;
+                schedulerSerial = command.serial;
+                nextScheduler = null;
+                slipAtOrigin = measureOutputSlip();
+                // Whatever played before has been replaced, so it counts as complete
+                completedSerial = command.serial - 1;
+                // Changes waiting for a sam get the new timeline's first one
+                applyDeferred(clock);
+            } else if (command.type == EngineCommand.Type.PLAY_NEXT) {
+                nextScheduler = command.scheduler;
+                nextSerial = command.serial;
+            } else if (command.type == EngineCommand.Type.STOP) {
+                queue.clear();
+                voices.stopAll();
+                scheduler = null;
+                nextScheduler = null;
+                completedSerial = command.serial;
+                applyDeferred(clock);
+            } else if (command.type == EngineCommand.Type.SAMPLES) {
+                mixer.setSamples(command.samples, command.composites);
+            } else if (command.applyAt == EngineCommand.ApplyAt.NEXT_SAM && scheduler != null
+                    && deferredCount < deferred.length) {
+                if (deferredCount == 0) samFrame = scheduler.findNextSam(clock);
+                deferred[deferredCount++].copyFrom(command);
+            } else {
+                applyChange(command, clock);
+            }
+            command.clear();
+            commands.advance();
+        }
+
+        if (deferredCount > 0 && scheduler != null && samFrame < clock + BLOCK_FRAMES + scheduler.getLookaheadFrames()) {
+            // The sam is about to be scheduled: everything from it on is scheduled with the changes
+            applyDeferred(samFrame);
+        }
+
+        if (scheduler != null) {
+            scheduler.schedule(clock + BLOCK_FRAMES, queue);
+            if (scheduler.isDone() && nextScheduler != null) {
+                // Every event of the current timeline is queued: the next one picks up at its end frame
+                nextScheduler.setTempoScale(tempoScale, clock);
+                nextScheduler.startAfter(Math.max(clock, scheduler.getEndFrame()));
+                scheduler = nextScheduler;
+                schedulerSerial = nextSerial;
+                nextScheduler = null;
+                completedSerial = nextSerial - 1;
+                scheduler.schedule(clock + BLOCK_FRAMES, queue);
+            }
+            mixer.setOutputDelayFrames(Math.max(0, measureOutputSlip() - slipAtOrigin));
+        }
+        mixer.render(mix, clock, BLOCK_FRAMES);
+        if (masterGain != 1.0f || targetMasterGain != 1.0f) applyMasterGain(mix);
+        clock += BLOCK_FRAMES;
+        framePosition = clock;
+
+        if (scheduler != null && scheduler.isDone() && clock >= scheduler.getEndFrame() && mixer.isIdle()) {
+            scheduler = null;
+            completedSerial = schedulerSerial;
+            applyDeferred(clock);
+        }
+
+        kernels.encode16(mix, 0, pcm, 0, mix.length);
+    }
+
+    /**
+     * Applies a live change from an engine frame on. Events queued from that frame are dropped
+     * and the scheduler seeks back to it, so they are queued again with the change.
+     */
+    private void applyChange(EngineCommand command, long frame) {
+        EngineCommand.Type type = command.type;
+        if (type == EngineCommand.Type.MASTER_GAIN) {
+            targetMasterGain = (float) command.value;
+            return;
+        }
+        if (type == EngineCommand.Type.TEMPO) {
+            tempoScale = command.value;
+            if (scheduler != null) scheduler.setTempoScale(tempoScale, frame);
+        } else {
+            Timeline timeline = command.timeline;
+            if (type == EngineCommand.Type.MUTE) {
+                timeline.setMuted(command.segment, command.enabled);
+            } else if (type == EngineCommand.Type.SOLO) {
+                timeline.setSolo(command.segment, command.enabled);
+            } else if (type == EngineCommand.Type.EDIT_BOL) {
+                timeline.getSegment(command.segment).setBolAt(command.position, command.variations, command.bolId2,
+                        command.gain, command.gain2);
+            }
+            // A queued timeline has nothing scheduled yet and picks the change up when it starts
+            if (scheduler == null || scheduler.getTimeline() != timeline) return;
+        }
+        if (scheduler != null) {
+            // Events before the timeline's start belong to the one it follows
+            long from = Math.max(frame, scheduler.getOrigin());
+            queue.truncateFrom(from);
+            scheduler.seek(from);
+        }
+    }
+
+    private void applyDeferred(long frame) {
+        for (int x = 0; x < deferredCount; x++) {
+            applyChange(deferred[x], frame);
+            deferred[x].clear();
+        }
+        deferredCount = 0;
+    }
+
+    /**
+     * Scales the block by the master gain, ramping from the previous gain so a change does not click
+     */
+    private void applyMasterGain(float[] mix) {
+        int channels = format.getChannels();
+        float step = (targetMasterGain - masterGain) / BLOCK_FRAMES;
+        float gain = masterGain;
+        for (int f = 0, i = 0; f < BLOCK_FRAMES; f++) {
+            gain += step;
+            for (int c = 0; c < channels; c++, i++) {
+                mix[i] *= gain;
+            }
+        }
+        masterGain = targetMasterGain;
+    }
+
+    /**
+     * Gets how many frames the output has fallen behind real time since it was opened; the growth
+     * of this value is the delay added to every bol written afterwards
+     */
+    private long measureOutputSlip() {
+        return sinkOpen ? sink.getSlipFrames() : 0;
+    }
+
+    /**
+     * Sets how far ahead of the rendered block events are queued; applies to the next play call
+     */
+    public void setLookaheadMs(double lookaheadMs) {
+        if (lookaheadMs < 0) {
+            throw new IllegalArgumentException("Lookahead must not be negative: " + lookaheadMs);
+        }
+        this.lookaheadMs = lookaheadMs;
+    }
+
+    /**
+     * Sets how long the tails of a loop fade out once the next loop begins; 0 (the default) lets them ring on
+     */
+    public void setCrossfadeMs(double crossfadeMs) {
+        if (crossfadeMs < 0) {
+            throw new IllegalArgumentException("Crossfade must not be negative: " + crossfadeMs);
+        }
+        mixer.setCrossfadeFrames((int) Math.round(format.msToFrames(crossfadeMs)));
+    }
+
+    public double getCrossfadeMs() { return format.framesToMs(mixer.getCrossfadeFrames()); }
+
+    /**
+     * Sets how bols of timelines compiled by this engine are spread over their sample variations
+     */
+    public void setVariations(VariationAssigner.Mode mode, long seed) {
+        this.variationMode = mode;
+        this.variationSeed = seed;
+    }
+
+    public VariationAssigner.Mode getVariationMode() { return variationMode; }
+    public long getVariationSeed() { return variationSeed; }
+    public double getLookaheadMs() { return lookaheadMs; }
+    public EngineFormat getFormat() { return format; }
+    public SampleBank getSampleBank() { return samples; }
+    public VoicePool getVoicePool() { return voices; }
+    public AudioSink getSink() { return sink; }
+
+    /**
+     * Gets the layer gains and premixed composites used for compound bols, for the current sample bank
+     */
+    public CompositeCache getComposites() { return composites; }
+
+    /**
+     * Gets the histogram of bol onset errors: scheduled frame versus actual output position
+     */
+    public JitterHistogram getJitter() { return mixer.getJitter(); }
+    public boolean isPlaying() { return completedSerial < sentSerial; }
+
+    /**
+     * Gets the number of frames rendered since the engine started
+     */
+    public long getFramePosition() { return framePosition; }
+
+    /**
+     * Gets the engine frame at which the last play (or playNext on an idle engine) started its
+     * timeline, or -1 before the first. Timelines queued behind it follow on from its end. An unpaced
+     * sink opened before anything was rendered has taken exactly this many frames before it.
+     */
+    public long getPlayOriginFrame() { return playOriginFrame; }
+}
@@ -0,0 +1,50 @@
+package in.oormi.naad.audio;
+
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Output of the real-time engine: the render thread writes each mixed block to a sink as 16-bit
+ * signed little-endian PCM. A sink paces the render loop the way a sound card does, by blocking
+ * in write until it can take the block, or lets it run free on a simulated clock.
+ * open and close are called from control threads; write, getFramePosition and getSlipFrames
+ * are called from the render thread, which they should not hold up beyond pacing it.
+ */
+public interface AudioSink extends AutoCloseable {
+
+    /**
+     * Opens the output for a format, with room for about bufferFrames frames ahead of playback
+     */
+    void open(EngineFormat format, int bufferFrames) throws LineUnavailableException;
+
+    /**
+     * Writes a block of PCM bytes (whole frames), blocking while the output is full
+     */
+    void write(byte[] pcm, int offset, int length);
+
+    /**
+     * Gets the number of frames played out since the sink was opened
+     */
+    long getFramePosition();
+
+    /**
+     * Gets how many frames the output has fallen behind real time since it was opened, e.g. after
+     * underruns; sinks on a simulated clock never fall behind
+     */
+    long getSlipFrames();
+
+    /**
+     * Checks whether write waits for real time. The engine writes to an unpaced sink only while
+     * something plays, instead of filling it with silence as fast as it can render.
+     */
+    boolean isPaced();
+
+    /**
+     * Blocks until everything written has been played out
+     */
+    void drain();
+
+    @Override
+    void close();
+
+    String getName();
+}
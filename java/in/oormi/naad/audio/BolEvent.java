@@ -0,0 +1,49 @@
+package in.oormi.naad.audio;
+
+/**
+ * A bol onset at an absolute position on the engine frame clock, with the additional bol
+ * (e.g. the bayan stroke of a compound bol) struck at the same frame, if any, and the accent
+ * gain of each. The first event of a loop that follows another is marked as a transition.
+ * Events live in preallocated queue slots and are overwritten in place.
+ */
+public class BolEvent {
+
+    long frame;
+    int bolId;
+    int bolId2;
+    float gain;
+    float gain2;
+    boolean transition;
+    int segment;
+
+    void set(long frame, int bolId, int bolId2, float gain, float gain2, boolean transition, int segment) {
+        this.frame = frame;
+        this.bolId = bolId;
+        this.bolId2 = bolId2;
+        this.gain = gain;
+        this.gain2 = gain2;
+        this.transition = transition;
+        this.segment = segment;
+    }
+
+    public long getFrame() { return frame; }
+    public int getBolId() { return bolId; }
+    public int getBolId2() { return bolId2; }
+    public float getGain() { return gain; }
+    public float getGain2() { return gain2; }
+    public boolean isTransition() { return transition; }
+    public int getSegment() { return segment; }
+
+    @Override
+    public String toString() {
+        return "BolEvent{" +
+                "frame=" + frame +
+                ", bolId=" + bolId +
+                ", bolId2=" + bolId2 +
+                ", gain=" + gain +
+                ", gain2=" + gain2 +
+                ", transition=" + transition +
+                ", segment=" + segment +
+                '}';
+    }
+}
@@ -0,0 +1,111 @@
+package in.oormi.naad.audio;
+
+import java.util.Arrays;
+
+/**
+ * Sink that records everything the engine plays into memory, on a free-running simulated clock,
+ * so tests can compare the full playback path against offline renders without a sound card.
+ * Being unpaced, it is written to only while the engine plays: a capture opened on an idle engine
+ * starts with the block of the first play, whose exact frame is AudioEngine.getPlayOriginFrame.
+ * The buffer grows as needed (allocating on the render thread, which is acceptable for tests)
+ * up to a frame limit; frames beyond it are counted and dropped.
+ */
+public class CaptureSink implements AudioSink {
+
+    public static final long DEFAULT_MAX_FRAMES = 44100L * 60 * 10;
+    private static final int INITIAL_BYTES = 64 * 1024;
+
+    private final long maxFrames;
+    private EngineFormat format;
+    private int frameBytes = 4;
+    private byte[] data = new byte[0];
+    private volatile int length = 0;
+    private volatile long framePosition = 0;
+    private long droppedFrames = 0;
+
+    public CaptureSink() {
+        this(DEFAULT_MAX_FRAMES);
+    }
+
+    public CaptureSink(long maxFrames) {
+        if (maxFrames <= 0) {
+            throw new IllegalArgumentException("Capture limit must be positive: " + maxFrames);
+        }
+        this.maxFrames = maxFrames;
+    }
+
+    @Override
+    public synchronized void open(EngineFormat format, int bufferFrames) {
+        this.format = format;
+        this.frameBytes = format.getChannels() * 2;
+        clear();
+    }
+
+    @Override
+    public synchronized void write(byte[] pcm, int offset, int count) {
+        framePosition += count / frameBytes;
+        long limit = Math.min(maxFrames * frameBytes, Integer.MAX_VALUE - 8);
+        int kept = (int) Math.max(0, Math.min(count, limit - length));
+        droppedFrames += (count - kept) / frameBytes;
+        if (kept == 0) return;
+
+        if (length + kept > data.length) {
+            long grown = Math.max(INITIAL_BYTES, (long) data.length * 2);
+            data = Arrays.copyOf(data, (int) Math.min(limit, Math.max(grown, length + kept)));
+        }
+        System.arraycopy(pcm, offset, data, length, kept);
+        length += kept;
+    }
+
+    /**
+     * Gets a copy of the captured 16-bit PCM bytes
+     */
+    public synchronized byte[] toByteArray() {
+        return Arrays.copyOf(data, length);
+    }
+
+    /**
+     * Gets the captured audio as interleaved floats in [-1, 1)
+     */
+    public synchronized float[] toFloats() {
+        float[] out = new float[length / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (short) ((data[2 * i] & 0xFF) | (data[2 * i + 1] << 8)) / 32768.0f;
+        }
+        return out;
+    }
+
+    /**
+     * Drops everything captured so far
+     */
+    public synchronized void clear() {
+        data = new byte[0];
+        length = 0;
+        framePosition = 0;
+        droppedFrames = 0;
+    }
+
+    @Override
+    public long getFramePosition() { return framePosition; }
+
+    @Override
+    public long getSlipFrames() { return 0; }
+
+    @Override
+    public boolean isPaced() { return false; }
+
+    @Override
+    public void drain() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String getName() { return "capture"; }
+    public int getCapturedFrames() { return length / frameBytes; }
+    public synchronized long getDroppedFrames() { return droppedFrames; }
+    public long getMaxFrames() { return maxFrames; }
+    public EngineFormat getFormat() { return format; }
+}
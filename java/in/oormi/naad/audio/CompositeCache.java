@@ -0,0 +1,142 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Bol;
+import java.util.Arrays;
+
+/**
+ * Layer gains for compound bols and a cache of premixed composite samples.
+ * A compound stroke such as Dha (Na on the dayan, Ge on the bayan) plays its primary bol and
+ * its additional bol at the same frame, each at its own layer gain. Pairs that occur often are
+ * premixed once into a single sample, aligned at their onsets, so a dense passage of compound
+ * bols takes one voice per hit instead of two.
+ *
+ * Composites are looked up on the render thread by direct array index and never allocate there.
+ * Prepare them before the timeline that uses them starts playing; composites built for other
+ * layer gains or an older bank are dropped by setLayerGains and clear.
+ */
+public class CompositeCache {
+
+    public static final float DEFAULT_PRIMARY_GAIN = 1.0f;
+    public static final float DEFAULT_ADDITIONAL_GAIN = 1.0f;
+    /** Pairs played at least this often in a timeline are premixed by prepare(Timeline) */
+    public static final int DEFAULT_MIN_USES = 2;
+
+    private static final int CAPACITY = SampleBank.CAPACITY;
+
+    private final SampleBank samples;
+    private final PcmSample[] composites = new PcmSample[CAPACITY * CAPACITY];
+    private volatile float primaryGain = DEFAULT_PRIMARY_GAIN;
+    private volatile float additionalGain = DEFAULT_ADDITIONAL_GAIN;
+    private int compositeCount = 0;
+    private long memoryBytes = 0;
+
+    public CompositeCache(SampleBank samples) {
+        this.samples = samples;
+    }
+
+    /**
+     * Gets the premixed composite of a bol pair, or null if the pair has not been prepared
+     */
+    public PcmSample get(int bolId, int bolId2) {
+        if (!isValid(bolId) || !isValid(bolId2)) return null;
+        return composites[bolId * CAPACITY + bolId2];
+    }
+
+    /**
+     * Premixes every pair used at least DEFAULT_MIN_USES times in a timeline; returns how many are cached
+     */
+    public int prepare(Timeline timeline) {
+        return prepare(timeline, DEFAULT_MIN_USES);
+    }
+
+    /**
+     * Premixes every pair used at least minUses times in a timeline; returns how many are cached
+     */
+    public synchronized int prepare(Timeline timeline, int minUses) {
+        int[] uses = new int[CAPACITY * CAPACITY];
+        for (Timeline.Segment segment : timeline.getSegments()) {
+            // Each played cycle of variations recurs this many times
+            int cycles = Math.max(1, segment.getEventCount() / Math.max(1, segment.getCycleLength()));
+            for (int x = 0; x < segment.getCycleLength(); x++) {
+                int bolId = segment.getBolIdAt(x);
+                int bolId2 = segment.getBolId2At(x);
+                if (isValid(bolId) && isValid(bolId2)) uses[bolId * CAPACITY + bolId2] += cycles;
+            }
+        }
+        for (int pair = 0; pair < uses.length; pair++) {
+            if (uses[pair] >= minUses && uses[pair] > 0) prepare(pair / CAPACITY, pair % CAPACITY);
+        }
+        return compositeCount;
+    }
+
+    /**
+     * Premixes one bol pair at the current layer gains and returns the composite,
+     * or null if either bol has no sample
+     */
+    public synchronized PcmSample prepare(int bolId, int bolId2) {
+        if (!isValid(bolId) || !isValid(bolId2)) return null;
+        int pair = bolId * CAPACITY + bolId2;
+        if (composites[pair] != null) return composites[pair];
+
+        PcmSample primary = samples.get(bolId);
+        PcmSample additional = samples.get(bolId2);
+        if (primary == null || additional == null) return null;
+
+        SampleIndex index = samples.getIndex();
+        int channels = samples.getFormat().getChannels();
+        int primaryFrames = Math.max(0, index.getTailFrame(bolId) - index.getOnsetFrame(bolId));
+        int additionalFrames = Math.max(0, index.getTailFrame(bolId2) - index.getOnsetFrame(bolId2));
+        float[] data = new float[Math.max(primaryFrames, additionalFrames) * channels];
+        addLayer(data, primary, index.getOnsetFrame(bolId), primaryFrames, index.getGain(bolId) * primaryGain);
+        addLayer(data, additional, index.getOnsetFrame(bolId2), additionalFrames,
+                index.getGain(bolId2) * additionalGain);
+
+        // The sample's final fields publish the mixed data safely to the render thread
+        PcmSample composite = new PcmSample(Bol.getBolVarName(bolId) + "+" + Bol.getBolVarName(bolId2), data, channels);
+        composites[pair] = composite;
+        compositeCount++;
+        memoryBytes += (long) data.length * Float.BYTES;
+        return composite;
+    }
+
+    private static void addLayer(float[] out, PcmSample sample, int begin, int frames, float gain) {
+        float[] data = sample.getData();
+        int offset = begin * sample.getChannels();
+        int count = Math.min(frames * sample.getChannels(), data.length - offset);
+        for (int i = 0; i < count; i++) {
+            out[i] += data[offset + i] * gain;
+        }
+    }
+
+    /**
+     * Sets the gain of the primary and the additional layer of compound bols.
+     * Premixed composites are dropped, since they were mixed at the old gains.
+     */
+    public synchronized void setLayerGains(float primaryGain, float additionalGain) {
+        if (primaryGain < 0 || additionalGain < 0) {
+            throw new IllegalArgumentException("Layer gains must not be negative: " + primaryGain + ", " + additionalGain);
+        }
+        if (primaryGain == this.primaryGain && additionalGain == this.additionalGain) return;
+        this.primaryGain = primaryGain;
+        this.additionalGain = additionalGain;
+        clear();
+    }
+
+    /**
+     * Drops every composite, e.g. after samples in the bank were replaced
+     */
+    public synchronized void clear() {
+        Arrays.fill(composites, null);
+        compositeCount = 0;
+        memoryBytes = 0;
+    }
+
+    private static boolean isValid(int bolId) {
+        return bolId >= 0 && bolId < CAPACITY;
+    }
+
+    public float getPrimaryGain() { return primaryGain; }
+    public float getAdditionalGain() { return additionalGain; }
+    public synchronized int getCompositeCount() { return compositeCount; }
+    public synchronized long getMemoryBytes() { return memoryBytes; }
+}
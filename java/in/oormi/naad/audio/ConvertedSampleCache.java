@@ -0,0 +1,94 @@
+package in.oormi.naad.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * On-disk cache of samples already converted to an engine format.
+ * Each entry is a small header followed by raw little-endian float frames, keyed by the
+ * source file's name, size and modification time plus the target rate and channel count,
+ * so an edited WAV or a different output format simply misses and is converted again.
+ */
+public class ConvertedSampleCache {
+
+    private static final int MAGIC = 0x4643414E; // "NACF" read little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+
+    private final Path directory;
+
+    public ConvertedSampleCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads a cached conversion of a source file, or returns null if there is none or it is unreadable
+     */
+    public PcmSample get(File source, EngineFormat format) {
+        Path entry = entryPath(source, format);
+        if (!Files.isRegularFile(entry)) return null;
+
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (map.remaining() < HEADER_BYTES || map.getInt(0) != MAGIC || map.getInt(4) != VERSION
+                    || map.getInt(8) != format.getSampleRate() || map.getInt(12) != format.getChannels()) {
+                return null;
+            }
+            int frames = map.getInt(16);
+            long expected = HEADER_BYTES + (long) frames * format.getChannels() * Float.BYTES;
+            if (frames < 0 || map.capacity() != expected) return null;
+
+            float[] data = new float[frames * format.getChannels()];
+            map.position(HEADER_BYTES);
+            FloatBuffer floats = map.asFloatBuffer();
+            floats.get(data);
+            return new PcmSample(source.getName(), data, format.getChannels());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores a converted sample; written to a temporary file first so readers never see a partial entry
+     */
+    public void put(File source, EngineFormat format, PcmSample sample) throws IOException {
+        Files.createDirectories(directory);
+        Path entry = entryPath(source, format);
+        Path temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+
+        try {
+            float[] data = sample.getData();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + data.length * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(format.getSampleRate())
+                    .putInt(format.getChannels()).putInt(sample.getFrames());
+            buffer.asFloatBuffer().put(data);
+            buffer.position(0);
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                WavWriter.writeFully(channel, buffer);
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path entryPath(File source, EngineFormat format) {
+        String key = source.getName() + "-" + source.length() + "-" + source.lastModified()
+                + "-" + format.getSampleRate() + "x" + format.getChannels() + ".f32";
+        return directory.resolve(key);
+    }
+
+    public Path getDirectory() { return directory; }
+}
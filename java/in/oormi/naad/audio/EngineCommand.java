@@ -0,0 +1,116 @@
+package in.oormi.naad.audio;
+
+/**
+ * A reusable command slot passed from control threads to the render thread through an SpscRing.
+ * Fields are filled in place by the producer and cleared by the consumer, so sending a command
+ * allocates nothing on either side.
+ */
+public class EngineCommand {
+
+    /**
+     * What the render thread should do with the command
+     */
+    public enum Type {
+        /** Replace the current timeline with the scheduler, anchored at the next block */
+        PLAY,
+        /** Start the scheduler exactly where the current timeline ends, or at the next block if idle */
+        PLAY_NEXT,
+        /** Drop the current timeline and silence every voice */
+        STOP,
+        /** Scale the tempo of everything played from now on by value */
+        TEMPO,
+        /** Ramp the master gain to value over one block */
+        MASTER_GAIN,
+        /** Mute (enabled) or unmute a segment of the timeline */
+        MUTE,
+        /** Solo (enabled) or unsolo a segment of the timeline */
+        SOLO,
+        /** Replace a bol of a segment of the timeline */
+        EDIT_BOL,
+        /** Switch to another sample bank and its composites */
+        SAMPLES
+    }
+
+    /**
+     * When a live change takes effect
+     */
+    public enum ApplyAt {
+        /** From the start of the next rendered block */
+        NEXT_BLOCK,
+        /** From the next sam (start of an avartan) of the playing timeline */
+        NEXT_SAM
+    }
+
+    Type type;
+    EventScheduler scheduler;
+    long serial;
+
+    // Parameters of live changes
+    ApplyAt applyAt = ApplyAt.NEXT_BLOCK;
+    Timeline timeline;
+    int segment;
+    int position;
+    int[] variations;
+    int bolId2;
+    float gain;
+    float gain2;
+    double value;
+    boolean enabled;
+    SampleBank samples;
+    CompositeCache composites;
+
+    void set(Type type, EventScheduler scheduler, long serial) {
+        this.type = type;
+        this.scheduler = scheduler;
+        this.serial = serial;
+        this.applyAt = ApplyAt.NEXT_BLOCK;
+    }
+
+    void setChange(Type type, ApplyAt applyAt, Timeline timeline, int segment, double value, boolean enabled) {
+        this.type = type;
+        this.scheduler = null;
+        this.applyAt = applyAt;
+        this.timeline = timeline;
+        this.segment = segment;
+        this.value = value;
+        this.enabled = enabled;
+    }
+
+    void setBol(int position, int[] variations, int bolId2, float gain, float gain2) {
+        this.position = position;
+        this.variations = variations;
+        this.bolId2 = bolId2;
+        this.gain = gain;
+        this.gain2 = gain2;
+    }
+
+    void setSamples(SampleBank samples, CompositeCache composites) {
+        this.samples = samples;
+        this.composites = composites;
+    }
+
+    /**
+     * Copies a command into this one, to hold a change back until it is due
+     */
+    void copyFrom(EngineCommand other) {
+        setChange(other.type, other.applyAt, other.timeline, other.segment, other.value, other.enabled);
+        setBol(other.position, other.variations, other.bolId2, other.gain, other.gain2);
+        this.serial = other.serial;
+    }
+
+    /**
+     * Releases references once the command has been applied, so slots do not keep timelines alive
+     */
+    void clear() {
+        this.type = null;
+        this.scheduler = null;
+        this.timeline = null;
+        this.variations = null;
+        this.samples = null;
+        this.composites = null;
+    }
+
+    public Type getType() { return type; }
+    public ApplyAt getApplyAt() { return applyAt; }
+    public long getSerial() { return serial; }
+}
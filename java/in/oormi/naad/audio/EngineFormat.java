@@ -0,0 +1,64 @@
+package in.oormi.naad.audio;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Canonical audio format used by the render engine.
+ * Samples are decoded into this format once, so mixing never converts.
+ */
+public final class EngineFormat {
+
+    public static final int DEFAULT_SAMPLE_RATE = 44100;
+    public static final int DEFAULT_CHANNELS = 2;
+    public static final EngineFormat DEFAULT = new EngineFormat(DEFAULT_SAMPLE_RATE, DEFAULT_CHANNELS);
+
+    private final int sampleRate;
+    private final int channels;
+
+    public EngineFormat(int sampleRate, int channels) {
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("Invalid engine format: " + sampleRate + " Hz, " + channels + " ch");
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+    }
+
+    /**
+     * Converts a duration in milliseconds to a (fractional) frame count
+     */
+    public double msToFrames(double ms) {
+        return ms * sampleRate / 1000.0;
+    }
+
+    /**
+     * Converts a frame count to milliseconds
+     */
+    public double framesToMs(long frames) {
+        return frames * 1000.0 / sampleRate;
+    }
+
+    /**
+     * Gets the number of frames one bol occupies at the given tempo (one bol per beat)
+     */
+    public double framesPerBeat(double bpm) {
+        return sampleRate * 60.0 / bpm;
+    }
+
+    /**
+     * Gets the 16-bit signed little-endian line format for this engine format
+     */
+    public AudioFormat toAudioFormat() {
+        return new AudioFormat(sampleRate, 16, channels, true, false);
+    }
+
+    public int getSampleRate() { return sampleRate; }
+    public int getChannels() { return channels; }
+
+    @Override
+    public String toString() {
+        return "EngineFormat{" +
+                "sampleRate=" + sampleRate +
+                ", channels=" + channels +
+                '}';
+    }
+}
@@ -0,0 +1,81 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Bol;
+
+/**
+ * Fixed-capacity FIFO of preallocated bol events, ordered by frame.
+ * Used by the scheduler and mixer on the render thread; it never allocates after construction.
+ */
+public class EventQueue {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final BolEvent[] slots;
+    private final int mask;
+    private int head = 0;
+    private int tail = 0;
+
+    public EventQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public EventQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new BolEvent[size];
+        this.mask = size - 1;
+        for (int x = 0; x < size; x++) {
+            slots[x] = new BolEvent();
+        }
+    }
+
+    /**
+     * Appends an event for a single bol; returns false if the queue is full
+     */
+    public boolean offer(long frame, int bolId, int segment) {
+        return offer(frame, bolId, Bol.BOL_NONE, 1.0f, 1.0f, false, segment);
+    }
+
+    /**
+     * Appends an event for a bol and the additional bol struck with it, each at an accent gain,
+     * flagged if it starts a new loop; returns false if the queue is full
+     */
+    public boolean offer(long frame, int bolId, int bolId2, float gain, float gain2, boolean transition,
+            int segment) {
+        if (isFull()) return false;
+        slots[tail & mask].set(frame, bolId, bolId2, gain, gain2, transition, segment);
+        tail++;
+        return true;
+    }
+
+    /**
+     * Gets the oldest event without removing it, or null if empty
+     */
+    public BolEvent peek() {
+        return head == tail ? null : slots[head & mask];
+    }
+
+    /**
+     * Removes the oldest event
+     */
+    public void poll() {
+        if (head != tail) head++;
+    }
+
+    /**
+     * Drops every queued event at or after a frame, so they can be rescheduled
+     */
+    public void truncateFrom(long frame) {
+        while (tail != head && slots[(tail - 1) & mask].frame >= frame) {
+            tail--;
+        }
+    }
+
+    public void clear() {
+        head = tail;
+    }
+
+    public boolean isEmpty() { return head == tail; }
+    public boolean isFull() { return tail - head == slots.length; }
+    public int size() { return tail - head; }
+    public int capacity() { return slots.length; }
+}
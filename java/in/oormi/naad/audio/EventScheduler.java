@@ -0,0 +1,222 @@
+package in.oormi.naad.audio;
+
+/**
+ * Lookahead scheduler that walks a Timeline and queues bol events with absolute frame timestamps.
+ * Each call schedules everything up to a horizon on the audio frame clock, so the mixer always
+ * knows the upcoming onsets a configurable window ahead of the block it is rendering.
+ * Loops follow each other on the same clock, so the next loop's events are queued while the
+ * previous one is still playing; the first event of each following loop is marked as a transition.
+ * A tempo scale stretches the timeline from an anchor frame on, and seek rewinds the scheduler to
+ * the first event at or after a frame, so live changes can be applied without rebuilding anything.
+ */
+public class EventScheduler {
+
+    public static final double DEFAULT_LOOKAHEAD_MS = 50.0;
+
+    private final Timeline timeline;
+    private final long lookaheadFrames;
+    // The engine frame of the anchor, the timeline frame at the anchor, and the speed from there on
+    private long origin = 0;
+    private double anchor = 0.0;
+    private double tempoScale = 1.0;
+    private int beginSegment = 0;
+    private int beginEvent = 0;
+    private int segmentIndex = 0;
+    private int eventIndex = 0;
+    private int endSegment = 0;
+    private int endEvent = 0;
+    // Segment of the last queued event, and whether the next event starts a loop regardless
+    private int lastSegment = 0;
+    private boolean follows = false;
+    private boolean transitionPending = false;
+    // Result of locate, kept in fields so a search allocates nothing
+    private int locatedSegment = 0;
+    private int locatedEvent = 0;
+
+    public EventScheduler(Timeline timeline) {
+        this(timeline, DEFAULT_LOOKAHEAD_MS);
+    }
+
+    public EventScheduler(Timeline timeline, double lookaheadMs) {
+        if (lookaheadMs < 0) {
+            throw new IllegalArgumentException("Lookahead must not be negative: " + lookaheadMs);
+        }
+        this.timeline = timeline;
+        this.lookaheadFrames = Math.round(timeline.getFormat().msToFrames(lookaheadMs));
+    }
+
+    /**
+     * Anchors the start of the timeline at an absolute engine frame and rewinds to the first event.
+     * The timeline plays at the current tempo scale from there on.
+     */
+    public void start(long originFrame) {
+        startRange(originFrame, 0, 0, timeline.getSegmentCount(), 0);
+    }
+
+    /**
+     * Anchors the timeline at an absolute engine frame and limits scheduling to a range of events.
+     * The range runs from (fromSegment, fromEvent) up to but excluding (toSegment, toEvent).
+     */
+    public void startRange(long originFrame, int fromSegment, int fromEvent, int toSegment, int toEvent) {
+        this.origin = originFrame;
+        this.anchor = 0.0;
+        this.beginSegment = fromSegment;
+        this.beginEvent = fromEvent;
+        this.segmentIndex = fromSegment;
+        this.eventIndex = fromEvent;
+        this.endSegment = toSegment;
+        this.endEvent = toEvent;
+        this.lastSegment = fromSegment;
+        this.follows = false;
+        this.transitionPending = false;
+    }
+
+    /**
+     * Anchors the start of the timeline where another one ends, so its first event follows the
+     * other's last without a gap and is marked as a transition
+     */
+    public void startAfter(long originFrame) {
+        start(originFrame);
+        this.follows = true;
+        this.transitionPending = true;
+    }
+
+    /**
+     * Changes the playback speed from an absolute engine frame on: 2.0 plays twice as fast.
+     * Events already queued keep their frames; seek from the same frame to requeue them.
+     */
+    public void setTempoScale(double scale, long atFrame) {
+        if (!(scale > 0) || Double.isInfinite(scale)) {
+            throw new IllegalArgumentException("Tempo scale must be positive: " + scale);
+        }
+        this.anchor = toTimelineFrame(atFrame);
+        this.origin = atFrame;
+        this.tempoScale = scale;
+    }
+
+    /**
+     * Rewinds or skips to the first event in range at or after an absolute engine frame
+     */
+    public void seek(long frame) {
+        locate(frame);
+        segmentIndex = locatedSegment;
+        eventIndex = locatedEvent;
+        // A loop boundary that is scheduled again is still a transition
+        boolean atBegin = segmentIndex == beginSegment && eventIndex == beginEvent;
+        lastSegment = eventIndex == 0 && !atBegin ? segmentIndex - 1 : segmentIndex;
+        transitionPending = follows && atBegin;
+    }
+
+    /**
+     * Gets the engine frame of the first sam (start of an avartan) at or after an absolute engine
+     * frame, or the end of the range if no sam is left
+     */
+    public long findNextSam(long frame) {
+        locate(frame);
+        if (locatedSegment >= timeline.getSegmentCount()) return getEndFrame();
+
+        Timeline.Segment segment = timeline.getSegment(locatedSegment);
+        int bols = Math.max(1, segment.getBolCount());
+        int count = locatedSegment == endSegment ? endEvent : segment.getEventCount();
+        int sam = (locatedEvent + bols - 1) / bols * bols;
+        // Past the last avartan, the next sam is where the following loop starts
+        return toEngineFrame(segment.getEventFrame(Math.min(sam, count)));
+    }
+
+    /**
+     * Finds the first event in range at or after an absolute engine frame, by binary search per segment
+     */
+    private void locate(long frame) {
+        int segments = Math.min(endSegment, timeline.getSegmentCount() - 1);
+        for (int s = beginSegment; s <= segments; s++) {
+            Timeline.Segment segment = timeline.getSegment(s);
+            int low = s == beginSegment ? beginEvent : 0;
+            int high = s == endSegment ? endEvent : segment.getEventCount();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (toEngineFrame(segment.getEventFrame(mid)) < frame) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int count = s == endSegment ? endEvent : segment.getEventCount();
+            if (low < count) {
+                locatedSegment = s;
+                locatedEvent = low;
+                return;
+            }
+        }
+        locatedSegment = endSegment;
+        locatedEvent = endEvent;
+    }
+
+    private long toEngineFrame(long timelineFrame) {
+        return origin + Math.round((timelineFrame - anchor) / tempoScale);
+    }
+
+    private double toTimelineFrame(long frame) {
+        return anchor + (frame - origin) * tempoScale;
+    }
+
+    /**
+     * Queues every event that starts before the end of the given block plus the lookahead window.
+     * Stops early if the queue is full; the remaining events are picked up on the next call.
+     */
+    public void schedule(long blockEnd, EventQueue queue) {
+        long horizon = blockEnd + lookaheadFrames;
+
+        while (!isDone()) {
+            Timeline.Segment segment = timeline.getSegment(segmentIndex);
+            int count = segmentIndex == endSegment ? endEvent : segment.getEventCount();
+            boolean audible = timeline.isAudible(segmentIndex);
+
+            while (eventIndex < count) {
+                long frame = toEngineFrame(segment.getEventFrame(eventIndex));
+                if (frame >= horizon) return;
+
+                int bolId = segment.getBolIdAt(eventIndex);
+                int bolId2 = segment.getBolId2At(eventIndex);
+                // A transition is queued even on a rest, so the crossfade starts on the loop boundary
+                boolean transition = transitionPending || segmentIndex != lastSegment;
+                if (audible && (transition || isPlayable(bolId) || isPlayable(bolId2))) {
+                    if (!queue.offer(frame, bolId, bolId2, segment.getGainAt(eventIndex),
+                            segment.getGain2At(eventIndex), transition, segmentIndex)) return;
+                    lastSegment = segmentIndex;
+                    transitionPending = false;
+                }
+                eventIndex++;
+            }
+            if (segmentIndex == endSegment) return;
+
+            segmentIndex++;
+            eventIndex = 0;
+        }
+    }
+
+    private static boolean isPlayable(int bolId) {
+        return bolId >= 0 && bolId < SampleBank.CAPACITY;
+    }
+
+    /**
+     * Checks whether every event in range has been queued
+     */
+    public boolean isDone() {
+        return segmentIndex > endSegment || (segmentIndex == endSegment && eventIndex >= endEvent);
+    }
+
+    /**
+     * Gets the absolute engine frame at which the scheduled range ends
+     */
+    public long getEndFrame() {
+        if (endSegment >= timeline.getSegmentCount()) {
+            return toEngineFrame(timeline.getEndFrame());
+        }
+        return toEngineFrame(timeline.getSegment(endSegment).getEventFrame(endEvent));
+    }
+
+    public Timeline getTimeline() { return timeline; }
+    public long getOrigin() { return origin; }
+    public double getTempoScale() { return tempoScale; }
+    public long getLookaheadFrames() { return lookaheadFrames; }
+}
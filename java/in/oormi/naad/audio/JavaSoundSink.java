@@ -0,0 +1,65 @@
+package in.oormi.naad.audio;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Sink that plays through a Java Sound SourceDataLine on the default mixer.
+ * The blocking line write paces rendering, so bol timing follows the sound card's clock.
+ */
+public class JavaSoundSink implements AudioSink {
+
+    private SourceDataLine line;
+    private EngineFormat format;
+    private long startNanos;
+
+    @Override
+    public void open(EngineFormat format, int bufferFrames) throws LineUnavailableException {
+        this.format = format;
+        line = AudioSystem.getSourceDataLine(format.toAudioFormat());
+        line.open(format.toAudioFormat(), bufferFrames * format.getChannels() * 2);
+        line.start();
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void write(byte[] pcm, int offset, int length) {
+        line.write(pcm, offset, length);
+    }
+
+    @Override
+    public long getFramePosition() {
+        return line == null ? 0 : line.getLongFramePosition();
+    }
+
+    /**
+     * The line's frame position stalls while it underruns, so its lag behind wall-clock time is
+     * the delay added to every bol written afterwards
+     */
+    @Override
+    public long getSlipFrames() {
+        if (line == null) return 0;
+        long elapsedFrames = (long) ((System.nanoTime() - startNanos) * (format.getSampleRate() / 1e9));
+        return elapsedFrames - line.getLongFramePosition();
+    }
+
+    @Override
+    public boolean isPaced() { return true; }
+
+    @Override
+    public void drain() {
+        if (line != null) line.drain();
+    }
+
+    @Override
+    public void close() {
+        if (line != null) {
+            line.close();
+            line = null;
+        }
+    }
+
+    @Override
+    public String getName() { return "javasound"; }
+}
@@ -0,0 +1,92 @@
+package in.oormi.naad.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of bol onset errors in microseconds, laid out like HdrHistogram:
+ * each power-of-two range is split into linear sub-buckets, so every recorded value is
+ * kept to within 1/64 of its magnitude. The render thread records without locking or
+ * allocating; any thread may read percentiles at the same time.
+ */
+public class JitterHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+    private static final long SUB_BUCKET_MASK = (1L << SUB_BUCKET_BITS) - 1;
+
+    /** Largest value tracked at full resolution: 2^32 us, a bit over an hour */
+    private static final int MAX_VALUE_BITS = 32;
+
+    private final AtomicLongArray counts =
+            new AtomicLongArray((MAX_VALUE_BITS - SUB_BUCKET_BITS + 2) * SUB_BUCKET_HALF);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records one onset error; early onsets (negative values) count as zero
+     */
+    public void recordValue(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(Math.min(indexOf(value), counts.length() - 1));
+        totalCount.incrementAndGet();
+
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * Gets the value at or below which the given percentage of recorded values fall
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    public long getP50() { return getValueAtPercentile(50.0); }
+    public long getP99() { return getValueAtPercentile(99.0); }
+    public long getMax() { return maxValue.get(); }
+    public long getTotalCount() { return totalCount.get(); }
+
+    /**
+     * Clears all counts; values recorded concurrently with a reset may be lost
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        maxValue.set(0);
+    }
+
+    private static int indexOf(long value) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK);
+        int bucket = magnitude - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> bucket);
+        return (bucket << (SUB_BUCKET_BITS - 1)) + subBucket;
+    }
+
+    private static long highestValueAt(int index) {
+        int bucket = Math.max(0, (index >> (SUB_BUCKET_BITS - 1)) - 1);
+        long subBucket = index - ((long) bucket << (SUB_BUCKET_BITS - 1));
+        return ((subBucket + 1) << bucket) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("onsets=%d p50=%.2fms p99=%.2fms max=%.2fms",
+                getTotalCount(), getP50() / 1000.0, getP99() / 1000.0, getMax() / 1000.0);
+    }
+}
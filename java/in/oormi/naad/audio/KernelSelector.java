@@ -0,0 +1,60 @@
+package in.oormi.naad.audio;
+
+import java.util.Arrays;
+
+/**
+ * Picks the mixer kernels once per JVM. The vector kernels are loaded by name only when the
+ * jdk.incubator.vector module is in the boot layer and the build included them, and are used
+ * only if they reproduce the scalar results on a test pattern. Set -Dnaad.kernels=scalar to
+ * force the scalar loops.
+ */
+final class KernelSelector {
+
+    static final String PROPERTY = "naad.kernels";
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_CLASS = "in.oormi.naad.audio.VectorKernels";
+
+    static final MixKernels SELECTED = select();
+
+    private KernelSelector() {
+    }
+
+    private static MixKernels select() {
+        MixKernels scalar = new ScalarKernels();
+        if ("scalar".equals(System.getProperty(PROPERTY))) return scalar;
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) return scalar;
+
+        try {
+            MixKernels vector = (MixKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+            return matches(vector, scalar) ? vector : scalar;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return scalar;
+        }
+    }
+
+    /**
+     * Runs both kernels over a pattern with odd lengths and offsets, out-of-range values and NaN
+     */
+    private static boolean matches(MixKernels candidate, MixKernels reference) {
+        int n = 1037;
+        float[] src = new float[n];
+        for (int i = 0; i < n; i++) {
+            src[i] = (float) Math.sin(i * 0.37) * (1.0f + (i % 7) * 0.1f);
+        }
+        src[5] = Float.NaN;
+
+        float[] a = new float[n];
+        float[] b = new float[n];
+        Arrays.fill(a, 0.25f);
+        Arrays.fill(b, 0.25f);
+        candidate.mixAdd(src, 3, a, 1, n - 5, 0.8f);
+        reference.mixAdd(src, 3, b, 1, n - 5, 0.8f);
+        if (!Arrays.equals(a, b)) return false;
+
+        byte[] pa = new byte[n * 2 + 2];
+        byte[] pb = new byte[n * 2 + 2];
+        candidate.encode16(src, 1, pa, 2, n - 1);
+        reference.encode16(src, 1, pb, 2, n - 1);
+        return Arrays.equals(pa, pb);
+    }
+}
@@ -0,0 +1,163 @@
+package in.oormi.naad.audio;
+
+import java.util.stream.IntStream;
+
+/**
+ * Measures peak, RMS and integrated loudness of bank samples and derives their playback gains.
+ * Loudness follows ITU-R BS.1770: K-weighting (high shelf plus high-pass), mean square over
+ * 400 ms blocks with 75% overlap, then an absolute gate at -70 LUFS and a relative gate 10 LU
+ * below the ungated level. Samples shorter than one block are measured as a single block.
+ */
+public final class LoudnessAnalyzer {
+
+    public static final double BLOCK_MS = 400.0;
+    public static final double BLOCK_STEP_MS = 100.0;
+    public static final double ABSOLUTE_GATE_LUFS = -70.0;
+    public static final double RELATIVE_GATE_LU = -10.0;
+
+    private LoudnessAnalyzer() {
+    }
+
+    /**
+     * Measures every sample of a bank in parallel and stores the results and gains in its index
+     */
+    public static void analyze(SampleBank bank) {
+        SampleIndex index = bank.getIndex();
+        IntStream.range(0, SampleBank.CAPACITY).parallel().forEach(bolId -> {
+            PcmSample sample = bank.get(bolId);
+            if (sample != null) measure(bolId, sample, index, bank.getFormat());
+        });
+        index.normalizeGains();
+    }
+
+    /**
+     * Measures the played range of one sample and stores peak, RMS and loudness in the index.
+     * Safe to call for different bol IDs from several threads.
+     */
+    public static void measure(int bolId, PcmSample sample, SampleIndex index, EngineFormat format) {
+        float[] data = sample.getData();
+        int channels = sample.getChannels();
+        int begin = index.getOnsetFrame(bolId);
+        int end = Math.min(index.getTailFrame(bolId), sample.getFrames());
+        if (end <= begin) {
+            index.setLevels(bolId, 0.0f, 0.0f, Float.NEGATIVE_INFINITY);
+            return;
+        }
+
+        float peak = 0.0f;
+        double sumSquares = 0.0;
+        for (int i = begin * channels; i < end * channels; i++) {
+            float v = data[i];
+            float a = Math.abs(v);
+            if (a > peak) peak = a;
+            sumSquares += (double) v * v;
+        }
+        float rms = (float) Math.sqrt(sumSquares / ((double) (end - begin) * channels));
+        double lufs = integratedLoudness(data, channels, begin, end, format.getSampleRate());
+        index.setLevels(bolId, peak, rms, (float) lufs);
+    }
+
+    /**
+     * Computes the gated integrated loudness of frames [begin, end) in LUFS
+     */
+    static double integratedLoudness(float[] data, int channels, int begin, int end, int sampleRate) {
+        int frames = end - begin;
+
+        // K-weighted squares summed over channels (all channel weights are 1 for left/right/mono)
+        double[] power = new double[frames];
+        for (int c = 0; c < channels; c++) {
+            KWeighting filter = new KWeighting(sampleRate);
+            for (int f = 0; f < frames; f++) {
+                double y = filter.process(data[(begin + f) * channels + c]);
+                power[f] += y * y;
+            }
+        }
+
+        int blockFrames = (int) Math.round(BLOCK_MS * sampleRate / 1000.0);
+        int stepFrames = (int) Math.round(BLOCK_STEP_MS * sampleRate / 1000.0);
+        if (frames <= blockFrames) {
+            return toLufs(mean(power, 0, frames));
+        }
+
+        int blocks = (frames - blockFrames) / stepFrames + 1;
+        double[] blockPower = new double[blocks];
+        for (int b = 0; b < blocks; b++) {
+            blockPower[b] = mean(power, b * stepFrames, b * stepFrames + blockFrames);
+        }
+
+        double absoluteGate = fromLufs(ABSOLUTE_GATE_LUFS);
+        double relativeGate = fromLufs(toLufs(gatedMean(blockPower, absoluteGate)) + RELATIVE_GATE_LU);
+        return toLufs(gatedMean(blockPower, Math.max(absoluteGate, relativeGate)));
+    }
+
+    private static double mean(double[] values, int from, int to) {
+        double sum = 0.0;
+        for (int i = from; i < to; i++) sum += values[i];
+        return sum / (to - from);
+    }
+
+    private static double gatedMean(double[] blockPower, double gate) {
+        double sum = 0.0;
+        int count = 0;
+        for (double p : blockPower) {
+            if (p > gate) {
+                sum += p;
+                count++;
+            }
+        }
+        return count == 0 ? 0.0 : sum / count;
+    }
+
+    private static double toLufs(double meanSquare) {
+        return meanSquare <= 0.0 ? Double.NEGATIVE_INFINITY : -0.691 + 10.0 * Math.log10(meanSquare);
+    }
+
+    private static double fromLufs(double lufs) {
+        return Math.pow(10.0, (lufs + 0.691) / 10.0);
+    }
+
+    /**
+     * The two-stage BS.1770 K-weighting filter, designed for the given sample rate
+     */
+    private static class KWeighting {
+        private final double sb0, sb1, sb2, sa1, sa2;
+        private final double ha1, ha2;
+        private double s1, s2, h1, h2;
+
+        KWeighting(int sampleRate) {
+            // Stage 1: high shelf modelling the acoustic effect of the head
+            double f0 = 1681.974450955533;
+            double g = 3.999843853973347;
+            double q = 0.7071752369554196;
+            double k = Math.tan(Math.PI * f0 / sampleRate);
+            double vh = Math.pow(10.0, g / 20.0);
+            double vb = Math.pow(vh, 0.4996667741545416);
+            double a0 = 1.0 + k / q + k * k;
+            sb0 = (vh + vb * k / q + k * k) / a0;
+            sb1 = 2.0 * (k * k - vh) / a0;
+            sb2 = (vh - vb * k / q + k * k) / a0;
+            sa1 = 2.0 * (k * k - 1.0) / a0;
+            sa2 = (1.0 - k / q + k * k) / a0;
+
+            // Stage 2: RLB high-pass
+            f0 = 38.13547087602444;
+            q = 0.5003270373238773;
+            k = Math.tan(Math.PI * f0 / sampleRate);
+            a0 = 1.0 + k / q + k * k;
+            ha1 = 2.0 * (k * k - 1.0) / a0;
+            ha2 = (1.0 - k / q + k * k) / a0;
+        }
+
+        double process(double x) {
+            // Transposed direct form II for both biquads
+            double y = sb0 * x + s1;
+            s1 = sb1 * x - sa1 * y + s2;
+            s2 = sb2 * x - sa2 * y;
+
+            double z = y + h1;
+            h1 = -2.0 * y - ha1 * z + h2;
+            h2 = y - ha2 * z;
+            return z;
+        }
+    }
+}
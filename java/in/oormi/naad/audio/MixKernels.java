@@ -0,0 +1,30 @@
+package in.oormi.naad.audio;
+
+/**
+ * Data-parallel inner loops of the mixer: accumulating a voice into the mix bus and
+ * converting the bus to 16-bit PCM. A SIMD implementation on the incubating Vector API,
+ * built by the vector profile, is used when the JVM runs with --add-modules
+ * jdk.incubator.vector and it passes a self-check against the scalar loops; otherwise the
+ * scalar loops are used.
+ */
+public interface MixKernels {
+
+    /**
+     * Adds count samples of src, scaled by gain, onto dst
+     */
+    void mixAdd(float[] src, int srcOffset, float[] dst, int dstOffset, int count, float gain);
+
+    /**
+     * Encodes floats into 16-bit signed little-endian PCM, clipping to full scale
+     */
+    void encode16(float[] src, int srcOffset, byte[] dst, int dstOffset, int samples);
+
+    String getName();
+
+    /**
+     * Gets the kernels selected for this JVM
+     */
+    static MixKernels get() {
+        return KernelSelector.SELECTED;
+    }
+}
@@ -0,0 +1,163 @@
+package in.oormi.naad.audio;
+
+/**
+ * Consumes scheduled bol events and mixes the triggered voices block by block.
+ * Each event starts its voice at the exact frame offset within the block it falls in,
+ * skipping the sample's leading silence so the transient itself lands on the beat.
+ * Its levelling gain is applied so every variation of a bol hits equally hard.
+ * The difference between its scheduled and actual start is recorded per bol.
+ * A compound bol plays its additional bol at the same frame, from a premixed composite when
+ * one is cached and otherwise on a second voice, with the layer gains of the composite cache.
+ * Each layer is scaled by the accent gain the scheduler looked up for the event.
+ * With a crossfade set, voices still ringing when the next loop begins are faded out from its
+ * first frame, so the tails of one loop do not smear into the next.
+ */
+public class Mixer {
+
+    private final VoicePool voices;
+    private final EventQueue queue;
+    // Replaced only between blocks, by whichever thread renders them
+    private SampleBank samples;
+    private SampleIndex index;
+    private CompositeCache composites;
+    private final int channels;
+    private final double microsPerFrame;
+    private final JitterHistogram jitter = new JitterHistogram();
+    private long outputDelayFrames = 0;
+    private volatile int crossfadeFrames = 0;
+    private long crossfadeFrame = Long.MAX_VALUE;
+    private int lateCount = 0;
+
+    public Mixer(SampleBank samples, VoicePool voices, EventQueue queue) {
+        this(samples, voices, queue, new CompositeCache(samples));
+    }
+
+    public Mixer(SampleBank samples, VoicePool voices, EventQueue queue, CompositeCache composites) {
+        this.samples = samples;
+        this.voices = voices;
+        this.queue = queue;
+        this.composites = composites;
+        this.index = samples.getIndex();
+        this.channels = samples.getFormat().getChannels();
+        this.microsPerFrame = 1e6 / samples.getFormat().getSampleRate();
+    }
+
+    /**
+     * Switches to another bank of the same format and the composites premixed from it.
+     * Voices already ringing finish on the samples they started with.
+     */
+    public void setSamples(SampleBank samples, CompositeCache composites) {
+        this.samples = samples;
+        this.index = samples.getIndex();
+        this.composites = composites;
+    }
+
+    /**
+     * Triggers every queued event that falls inside the block and mixes all voices into out
+     */
+    public void render(float[] out, long blockStart, int frames) {
+        long blockEnd = blockStart + frames;
+
+        BolEvent event;
+        while ((event = queue.peek()) != null && event.frame < blockEnd) {
+            int offset = (int) (event.frame - blockStart);
+            if (offset < 0) {
+                // Scheduled too late for its block; play it now rather than never
+                offset = 0;
+                lateCount++;
+            }
+            if (event.transition) crossfadeAt(event.frame);
+            // Voices started before the transition fade, those it starts do not
+            if (crossfadeFrame <= event.frame) applyCrossfade(blockStart);
+            if (trigger(event.bolId, event.bolId2, event.gain, event.gain2, offset)) {
+                long errorFrames = blockStart + offset - event.frame + outputDelayFrames;
+                jitter.recordValue(Math.round(errorFrames * microsPerFrame));
+            }
+            queue.poll();
+        }
+        if (crossfadeFrame < blockEnd) applyCrossfade(blockStart);
+
+        voices.mix(out, frames, channels);
+    }
+
+    /**
+     * Fades out every voice ringing at an absolute frame over the crossfade length, as at the start
+     * of a loop; voices triggered at or after that frame keep playing. Does nothing without a crossfade.
+     */
+    public void crossfadeAt(long frame) {
+        crossfadeFrame = frame;
+    }
+
+    private void applyCrossfade(long blockStart) {
+        int fadeFrames = crossfadeFrames;
+        if (fadeFrames > 0) voices.fadeOutAll(fadeFrames, (int) Math.max(0, crossfadeFrame - blockStart));
+        crossfadeFrame = Long.MAX_VALUE;
+    }
+
+    /**
+     * Starts the voices of one event; returns false if both layers are muted or neither of its bols has a sample
+     */
+    private boolean trigger(int bolId, int bolId2, float gain, float gain2, int offset) {
+        // A fully muted event takes no voice, not even a silent composite
+        if (gain == 0.0f && gain2 == 0.0f) return false;
+
+        // A composite holds both layers, so it only fits when both are accented alike
+        if (gain == gain2) {
+            PcmSample composite = composites.get(bolId, bolId2);
+            if (composite != null) {
+                voices.trigger(composite, 0, composite.getFrames(), gain, offset);
+                return true;
+            }
+        }
+
+        // Muted layers (e.g. the bayan on Khali) take no voice at all
+        PcmSample primary = gain > 0.0f ? samples.get(bolId) : null;
+        PcmSample additional = gain2 > 0.0f ? samples.get(bolId2) : null;
+        if (additional == null) {
+            if (primary == null) return false;
+            // A plain bol is not a layer, so it keeps its own level
+            voices.trigger(primary, index.getOnsetFrame(bolId), index.getTailFrame(bolId),
+                    index.getGain(bolId) * gain, offset);
+            return true;
+        }
+        if (primary != null) {
+            voices.trigger(primary, index.getOnsetFrame(bolId), index.getTailFrame(bolId),
+                    index.getGain(bolId) * composites.getPrimaryGain() * gain, offset);
+        }
+        voices.trigger(additional, index.getOnsetFrame(bolId2), index.getTailFrame(bolId2),
+                index.getGain(bolId2) * composites.getAdditionalGain() * gain2, offset);
+        return true;
+    }
+
+    /**
+     * Checks whether nothing is queued and no voice is still ringing
+     */
+    public boolean isIdle() {
+        return queue.isEmpty() && voices.getActiveCount() == 0;
+    }
+
+    /**
+     * Sets how far the output has slipped behind the frame clock (e.g. after line underruns);
+     * added to the onset error of every bol triggered from now on
+     */
+    public void setOutputDelayFrames(long outputDelayFrames) {
+        this.outputDelayFrames = outputDelayFrames;
+    }
+
+    /**
+     * Sets how long tails of a loop fade out once the next loop begins; 0 lets them ring on
+     */
+    public void setCrossfadeFrames(int crossfadeFrames) {
+        if (crossfadeFrames < 0) {
+            throw new IllegalArgumentException("Crossfade must not be negative: " + crossfadeFrames);
+        }
+        this.crossfadeFrames = crossfadeFrames;
+    }
+
+    public int getCrossfadeFrames() { return crossfadeFrames; }
+    public EventQueue getQueue() { return queue; }
+    public CompositeCache getComposites() { return composites; }
+    public JitterHistogram getJitter() { return jitter; }
+    public VoicePool getVoicePool() { return voices; }
+    public int getLateCount() { return lateCount; }
+}
@@ -0,0 +1,67 @@
+package in.oormi.naad.audio;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sink that discards audio but keeps a simulated clock of the frames written, for running the
+ * engine on machines without a sound card. Free-running by default, so a benchmark renders as
+ * fast as the engine can; the engine then writes only while something plays, so the clock
+ * counts the frames rendered for playback and stands still while the engine is idle. When
+ * paced, writes wait for wall-clock time and the engine keeps writing silence between plays,
+ * so the clock runs on like a real device.
+ */
+public class NullSink implements AudioSink {
+
+    private final boolean paced;
+    private EngineFormat format;
+    private long startNanos;
+    private volatile long framePosition = 0;
+
+    public NullSink() {
+        this(false);
+    }
+
+    public NullSink(boolean paced) {
+        this.paced = paced;
+    }
+
+    @Override
+    public void open(EngineFormat format, int bufferFrames) {
+        this.format = format;
+        this.framePosition = 0;
+        this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void write(byte[] pcm, int offset, int length) {
+        long frames = framePosition + length / (format.getChannels() * 2);
+        if (paced) {
+            long due = startNanos + (long) (frames * 1e9 / format.getSampleRate());
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+        framePosition = frames;
+    }
+
+    @Override
+    public long getFramePosition() { return framePosition; }
+
+    @Override
+    public long getSlipFrames() { return 0; }
+
+    @Override
+    public void drain() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String getName() { return paced ? "null (paced)" : "null"; }
+
+    @Override
+    public boolean isPaced() { return paced; }
+}
@@ -0,0 +1,419 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Composition;
+import in.oormi.naad.core.VariationAssigner;
+import in.oormi.naad.io.CompositionFileHandler;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders timelines to memory or WAV files as fast as the CPU allows.
+ * Uses the same scheduler, voice pool and mixer as real-time playback, so a bounce
+ * sounds exactly like live playback, only without waiting for an output line.
+ */
+public class OfflineRenderer {
+
+    public static final int BLOCK_FRAMES = 4096;
+    public static final double CHUNK_TARGET_MS = 10000.0;
+    public static final long DEFAULT_IN_MEMORY_LIMIT_BYTES = 256L * 1024 * 1024;
+
+    private final SampleBank samples;
+    private final ForkJoinPool pool;
+    private final int voiceCount;
+    private final VoicePool.StealPolicy stealPolicy;
+    private final CompositeCache composites;
+    private long inMemoryLimitBytes = DEFAULT_IN_MEMORY_LIMIT_BYTES;
+    private VariationAssigner.Mode variationMode = VariationAssigner.Mode.ROUND_ROBIN;
+    private long variationSeed = VariationAssigner.DEFAULT_SEED;
+    private int crossfadeFrames = 0;
+    private double lastRealtimeFactor = 0.0;
+    private double lastDurationErrorMs = 0.0;
+
+    public OfflineRenderer(SampleBank samples) {
+        this(samples, VoicePool.DEFAULT_VOICES, VoicePool.StealPolicy.OLDEST, ForkJoinPool.commonPool());
+    }
+
+    public OfflineRenderer(SampleBank samples, int voiceCount, VoicePool.StealPolicy stealPolicy, ForkJoinPool pool) {
+        this.samples = samples;
+        this.pool = pool;
+        this.voiceCount = voiceCount;
+        this.stealPolicy = stealPolicy;
+        this.composites = new CompositeCache(samples);
+    }
+
+    /**
+     * Renders a composition (loop sequence order, or all loops in order) to a WAV file
+     */
+    public long renderToFile(Composition composition, Path path, WavWriter.Encoding encoding) throws IOException {
+        Timeline timeline = newTimeline();
+        timeline.addComposition(composition);
+        lastDurationErrorMs = durationErrorMs(timeline, composition.getTotalDurationMs());
+        return renderToFile(timeline, path, encoding);
+    }
+
+    /**
+     * Creates an empty timeline whose sample variations are assigned like AudioEngine's,
+     * so a bounce plays the same variations as live playback with the same seed
+     */
+    public Timeline newTimeline() {
+        Timeline timeline = new Timeline(samples.getFormat());
+        timeline.setVariationAssigner(samples.newVariationAssigner(variationMode, variationSeed));
+        return timeline;
+    }
+
+    /**
+     * Renders a timeline to a WAV file and returns the number of frames written.
+     * Timelines whose audio would exceed the in-memory limit are streamed instead.
+     */
+    public long renderToFile(Timeline timeline, Path path, WavWriter.Encoding encoding) throws IOException {
+        long estimatedBytes = timeline.getEndFrame() * samples.getFormat().getChannels() * 2L * Float.BYTES;
+        if (estimatedBytes > inMemoryLimitBytes) {
+            try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                return renderStreaming(timeline, out, encoding);
+            }
+        }
+        RenderResult result = render(timeline);
+        WavWriter.write(path, result.data, result.frames, samples.getFormat(), encoding);
+        return result.frames;
+    }
+
+    /**
+     * Renders a timeline to a stream in fixed-size blocks; the stream is not closed.
+     * A FileOutputStream is written through its channel, so the WAV sizes are back-patched
+     * (unless it was opened to append, where writes ignore the position).
+     */
+    public long renderStreaming(Timeline timeline, OutputStream out, WavWriter.Encoding encoding) throws IOException {
+        WritableByteChannel channel = out instanceof FileOutputStream
+                ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out);
+        return renderStreaming(timeline, channel, encoding);
+    }
+
+    /**
+     * Renders a timeline to a channel in fixed-size blocks, so memory use does not depend on its length.
+     * The WAV sizes are back-patched if the channel is seekable. The channel is not closed.
+     */
+    public long renderStreaming(Timeline timeline, WritableByteChannel out, WavWriter.Encoding encoding)
+            throws IOException {
+        long startNanos = System.nanoTime();
+        EngineFormat format = samples.getFormat();
+        int channels = format.getChannels();
+
+        WavStreamWriter writer = new WavStreamWriter(out, format, encoding);
+        composites.prepare(timeline);
+        EventQueue queue = new EventQueue();
+        Mixer mixer = new Mixer(samples, new VoicePool(voiceCount, stealPolicy), queue, composites);
+        mixer.setCrossfadeFrames(crossfadeFrames);
+        EventScheduler scheduler = new EventScheduler(timeline, 0.0);
+        scheduler.start(0);
+
+        float[] block = new float[BLOCK_FRAMES * channels];
+        long clock = 0;
+        while (!(scheduler.isDone() && clock >= scheduler.getEndFrame() && mixer.isIdle())) {
+            Arrays.fill(block, 0.0f);
+            scheduler.schedule(clock + BLOCK_FRAMES, queue);
+            mixer.render(block, clock, BLOCK_FRAMES);
+
+            int frames = BLOCK_FRAMES;
+            if (scheduler.isDone() && mixer.isIdle()) {
+                // Last block: drop trailing silence past the end of the timeline
+                long minFrames = Math.max(0, scheduler.getEndFrame() - clock);
+                frames = (int) trimSilence(block, Math.min(minFrames, BLOCK_FRAMES), BLOCK_FRAMES, channels);
+            }
+            writer.write(block, 0, frames);
+            clock += BLOCK_FRAMES;
+        }
+        writer.finish();
+
+        long frames = writer.getFramesWritten();
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        lastRealtimeFactor = seconds > 0 ? format.framesToMs(frames) / 1000.0 / seconds : 0.0;
+        return frames;
+    }
+
+    /**
+     * Renders a timeline into memory, including the ring-out of the last bols.
+     * Loops (and long loops per group of avartans) are rendered in parallel and copied to their frame
+     * offsets; the result matches a single pass, as renderStreaming makes, up to float rounding.
+     */
+    public RenderResult render(Timeline timeline) {
+        long startNanos = System.nanoTime();
+        EngineFormat format = samples.getFormat();
+        int channels = format.getChannels();
+
+        composites.prepare(timeline);
+        List<ChunkTask> tasks = splitIntoChunks(timeline);
+        if (tasks.size() == 1 || pool.getParallelism() == 1) {
+            for (ChunkTask task : tasks) task.compute();
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+
+        long totalFrames = timeline.getEndFrame();
+        for (ChunkTask task : tasks) {
+            totalFrames = Math.max(totalFrames, task.startFrame + task.frames);
+        }
+        if (totalFrames * channels > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Timeline too long to render in memory: " + totalFrames + " frames");
+        }
+
+        // Each chunk holds every voice sounding in its frames, tails of earlier chunks included
+        float[] out = new float[(int) totalFrames * channels];
+        for (ChunkTask task : tasks) {
+            System.arraycopy(task.data, 0, out, (int) task.startFrame * channels, task.frames * channels);
+        }
+
+        long frames = trimSilence(out, timeline.getEndFrame(), totalFrames, channels);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        lastRealtimeFactor = seconds > 0 ? format.framesToMs(frames) / 1000.0 / seconds : 0.0;
+        return new RenderResult(out, (int) frames);
+    }
+
+    /**
+     * Splits a timeline into independently renderable chunks of consecutive frames: one per loop, and
+     * one per group of avartans (whole repeats) when a loop is longer than the chunk target.
+     * Only the OLDEST steal policy is split. Under the others, whether a voice is stolen or dropped can
+     * depend on events from any time before, which a chunk's warm-up does not replay.
+     */
+    private List<ChunkTask> splitIntoChunks(Timeline timeline) {
+        List<ChunkTask> tasks = new ArrayList<>();
+        if (stealPolicy != VoicePool.StealPolicy.OLDEST) {
+            tasks.add(new ChunkTask(timeline, 0, 0));
+            return tasks;
+        }
+        double target = samples.getFormat().msToFrames(CHUNK_TARGET_MS);
+
+        for (int seg = 0; seg < timeline.getSegmentCount(); seg++) {
+            Timeline.Segment segment = timeline.getSegment(seg);
+            int bols = segment.getBolCount();
+            double framesPerRepeat = bols * segment.getFramesPerBol();
+            int repeatsPerChunk = (int) Math.max(1, Math.floor(target / framesPerRepeat));
+
+            for (int repeat = 0; repeat < segment.getRepeats(); repeat += repeatsPerChunk) {
+                tasks.add(new ChunkTask(timeline, seg, repeat * bols));
+            }
+        }
+        if (tasks.isEmpty()) {
+            tasks.add(new ChunkTask(timeline, 0, 0));
+        }
+        for (int x = 0; x + 1 < tasks.size(); x++) {
+            tasks.get(x).endFrame = tasks.get(x + 1).startFrame;
+        }
+        return tasks;
+    }
+
+    /**
+     * Renders the frames from one event of a segment up to the next chunk's first frame (or to the
+     * end of the ring-out for the last chunk) into its own buffer. The voices still ringing from
+     * earlier chunks are rebuilt first by replaying, silently and on the same block grid, every event
+     * that can still sound at the chunk's first frame through a pool with the same size and steal
+     * policy, so polyphony and voice stealing carry across the boundary as in one continuous render.
+     */
+    private class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Timeline timeline;
+        private final int segment;
+        private final int fromEvent;
+        private final long startFrame;
+        private long endFrame = Long.MAX_VALUE;
+        private float[] data;
+        private int frames;
+
+        ChunkTask(Timeline timeline, int segment, int fromEvent) {
+            this.timeline = timeline;
+            this.segment = segment;
+            this.fromEvent = fromEvent;
+            this.startFrame = timeline.getSegmentCount() == 0 ? 0 : timeline.getSegment(segment).getEventFrame(fromEvent);
+        }
+
+        @Override
+        protected void compute() {
+            int channels = samples.getFormat().getChannels();
+            long longest = getLongestSampleFrames();
+
+            // A voice lasts no longer than its sample plus a steal fade, so older events are silent by now
+            int warmSegment = segment;
+            int warmEvent = fromEvent;
+            long warmFrame = startFrame - longest - VoicePool.STEAL_FADE_FRAMES;
+            while (true) {
+                if (warmEvent == 0) {
+                    if (warmSegment == 0) break;
+                    warmSegment--;
+                    warmEvent = timeline.getSegment(warmSegment).getEventCount();
+                    continue;
+                }
+                if (timeline.getSegment(warmSegment).getEventFrame(warmEvent - 1) < warmFrame) break;
+                warmEvent--;
+            }
+
+            // Later ranges' events are scheduled too, as they steal from the block holding the range's end
+            EventScheduler scheduler = new EventScheduler(timeline, 0.0);
+            scheduler.startRange(0, warmSegment, warmEvent, timeline.getSegmentCount(), 0);
+            boolean last = endFrame == Long.MAX_VALUE;
+            // The last range keeps its tail, which can be no longer than the longest sample
+            long capacity = (last ? scheduler.getEndFrame() + longest + BLOCK_FRAMES : endFrame) - startFrame;
+            data = new float[(int) capacity * channels];
+
+            EventQueue queue = new EventQueue();
+            Mixer mixer = new Mixer(samples, new VoicePool(voiceCount, stealPolicy), queue, composites);
+            mixer.setCrossfadeFrames(crossfadeFrames);
+            float[] block = new float[BLOCK_FRAMES * channels];
+            // Blocks fall on the same frames as in a single pass, where voices are stolen and mixed per block
+            long clock = timeline.getSegmentCount() == 0 ? 0 : timeline.getSegment(warmSegment).getEventFrame(warmEvent);
+            clock -= Math.floorMod(clock, (long) BLOCK_FRAMES);
+            while (last ? !(scheduler.isDone() && clock >= scheduler.getEndFrame() && mixer.isIdle())
+                    : clock < endFrame) {
+                Arrays.fill(block, 0.0f);
+                scheduler.schedule(clock + BLOCK_FRAMES, queue);
+                mixer.render(block, clock, BLOCK_FRAMES);
+
+                // Keep only the part of the block inside this range
+                long from = Math.max(clock, startFrame);
+                long to = Math.min(clock + BLOCK_FRAMES, startFrame + capacity);
+                if (to > from) {
+                    System.arraycopy(block, (int) (from - clock) * channels, data, (int) (from - startFrame) * channels,
+                            (int) (to - from) * channels);
+                }
+                clock += BLOCK_FRAMES;
+            }
+            frames = (int) Math.min(capacity, Math.max(0, clock - startFrame));
+        }
+    }
+
+    /**
+     * Drops the silent remainder of the final block, but never cuts into the timeline itself
+     */
+    private static long trimSilence(float[] out, long minFrames, long maxFrames, int channels) {
+        long end = maxFrames;
+        while (end > minFrames) {
+            int base = (int) (end - 1) * channels;
+            boolean silent = true;
+            for (int c = 0; c < channels; c++) {
+                if (out[base + c] != 0.0f) {
+                    silent = false;
+                    break;
+                }
+            }
+            if (!silent) break;
+            end--;
+        }
+        return end;
+    }
+
+    private long getLongestSampleFrames() {
+        long longest = 0;
+        for (int bolId = 0; bolId < SampleBank.CAPACITY; bolId++) {
+            PcmSample sample = samples.get(bolId);
+            if (sample != null) longest = Math.max(longest, sample.getFrames());
+        }
+        return longest;
+    }
+
+    /**
+     * Gets how far a timeline's length is from an expected duration, or 0 if they agree to within a frame
+     */
+    private double durationErrorMs(Timeline timeline, double expectedMs) {
+        double frames = samples.getFormat().msToFrames(expectedMs);
+        return Math.abs(frames - timeline.getEndFrame()) > 1.0 ? timeline.getDurationMs() - expectedMs : 0.0;
+    }
+
+    /**
+     * Batch-exports composition files to WAV.
+     * Usage: OfflineRenderer &lt;samplePath&gt; &lt;outputDir&gt; &lt;file.naad&gt;...
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: OfflineRenderer <samplePath> <outputDir> <file.naad>...");
+            return;
+        }
+
+        OfflineRenderer renderer = new OfflineRenderer(SampleBank.load(args[0], EngineFormat.DEFAULT));
+        CompositionFileHandler handler = new CompositionFileHandler();
+        Path outputDir = Paths.get(args[1]);
+        Files.createDirectories(outputDir);
+
+        for (int x = 2; x < args.length; x++) {
+            Composition composition = handler.loadComposition(args[x]);
+            if (composition == null) continue;
+
+            String name = Paths.get(args[x]).getFileName().toString().replaceFirst("\\.naad$", "") + ".wav";
+            long frames = renderer.renderToFile(composition, outputDir.resolve(name), WavWriter.Encoding.PCM_16);
+            if (renderer.getLastDurationErrorMs() != 0.0) {
+                System.err.printf("%s: rendered length differs from the composition duration by %.1f ms%n",
+                        name, renderer.getLastDurationErrorMs());
+            }
+            System.out.printf("Rendered %s: %.1f s at %.0fx realtime%n", name,
+                    frames / (double) EngineFormat.DEFAULT_SAMPLE_RATE, renderer.getLastRealtimeFactor());
+        }
+    }
+
+    /**
+     * Gets how many seconds of audio the last render produced per second of wall time
+     */
+    public double getLastRealtimeFactor() { return lastRealtimeFactor; }
+
+    /**
+     * Gets how much longer (positive) or shorter the last composition rendered with renderToFile came out
+     * than the composition's own duration, or 0 if they agree to within a frame
+     */
+    public double getLastDurationErrorMs() { return lastDurationErrorMs; }
+
+    /**
+     * Gets the layer gains and premixed composites used for compound bols
+     */
+    public CompositeCache getComposites() { return composites; }
+    public long getInMemoryLimitBytes() { return inMemoryLimitBytes; }
+
+    /**
+     * Sets how bols of compositions rendered from now on are spread over their sample variations
+     */
+    public void setVariations(VariationAssigner.Mode mode, long seed) {
+        this.variationMode = mode;
+        this.variationSeed = seed;
+    }
+
+    /**
+     * Sets how long the tails of a loop fade out once the next loop begins; 0 (the default) lets them ring on
+     */
+    public void setCrossfadeMs(double crossfadeMs) {
+        if (crossfadeMs < 0) {
+            throw new IllegalArgumentException("Crossfade must not be negative: " + crossfadeMs);
+        }
+        this.crossfadeFrames = (int) Math.round(samples.getFormat().msToFrames(crossfadeMs));
+    }
+
+    public double getCrossfadeMs() { return samples.getFormat().framesToMs(crossfadeFrames); }
+    public void setInMemoryLimitBytes(long inMemoryLimitBytes) { this.inMemoryLimitBytes = inMemoryLimitBytes; }
+    public SampleBank getSampleBank() { return samples; }
+
+    /**
+     * Interleaved audio produced by a render
+     */
+    public static class RenderResult {
+        private final float[] data;
+        private final int frames;
+
+        RenderResult(float[] data, int frames) {
+            this.data = data;
+            this.frames = frames;
+        }
+
+        public float[] getData() { return data; }
+        public int getFrames() { return frames; }
+    }
+}
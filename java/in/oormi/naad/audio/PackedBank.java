@@ -0,0 +1,353 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Bol;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Packed sample bank: every converted sample of a SampleBank in one file, so start-up is a
+ * single memory map instead of opening and decoding 120 WAVs.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header   magic "NBNK", version, sampleRate, channels, entryCount, sourceCount, reserved (long)
+ *   entries  one per stored sample: bolId, sampleRate, channels, frames, data offset (long),
+ *            data length (long), onset frame, tail frame, gain, peak, RMS, loudness (floats), 2 reserved
+ *   sources  one per source WAV: bolId, CRC32, size (long), modification time (long),
+ *            name length, UTF-8 file name
+ *   data     interleaved float32 frames of each entry, back to back from a 16-byte boundary
+ * </pre>
+ * A pack is current while every source WAV has the name, size and modification time it was
+ * built from, which takes one stat per file and no reads. Only a file whose metadata changed is
+ * hashed again; if its CRC still matches, the pack is kept and its stored time refreshed.
+ *
+ * Loading copies every sample out of the map onto the heap. Voices and the mix kernels read
+ * samples as float arrays, and the copy leaves nothing tied to the mapping, so a pack can be
+ * rebuilt in place while its samples play. What the pack saves is the decoding and conversion,
+ * not the memory: a loaded bank takes as much heap as one decoded from the WAVs.
+ */
+public class PackedBank {
+
+    public static final String EXTENSION = ".naadbank";
+    public static final String DEFAULT_FILE_NAME = "samples" + EXTENSION;
+
+    private static final int MAGIC = 0x4B4E424E; // "NBNK" read little-endian
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 32;
+    private static final int ENTRY_BYTES = 64;
+    private static final int SOURCE_BYTES = 28;
+
+    /**
+     * A source WAV of a bol as found on disk, with the CRC32 of its contents once known
+     */
+    static final class SourceFile {
+        final int bolId;
+        final File file;
+        final long size;
+        final long modified;
+        long crc = -1;
+
+        SourceFile(int bolId, File file, long size, long modified) {
+            this.bolId = bolId;
+            this.file = file;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private PackedBank() {
+    }
+
+    /**
+     * Loads a packed bank if it matches the source WAVs and the format, otherwise decodes
+     * the WAVs and rewrites the pack
+     */
+    public static SampleBank loadOrBuild(String samplePath, Path packPath, EngineFormat format) throws IOException {
+        List<SourceFile> sources = scanSources(samplePath);
+        if (Files.isRegularFile(packPath)) {
+            try {
+                SampleBank bank = loadIfCurrent(packPath, format, sources);
+                if (bank != null) return bank;
+            } catch (IOException e) {
+                System.err.println("Rebuilding unreadable sample pack " + packPath + ": " + e.getMessage());
+            }
+        }
+
+        SampleBank bank = SampleBank.load(samplePath, format);
+        write(bank, sources, packPath);
+        return bank;
+    }
+
+    /**
+     * Loads a packed bank if it was built for the format from the WAVs now under the sample path;
+     * returns null if it is missing or stale and should be rebuilt
+     */
+    public static SampleBank loadIfCurrent(Path packPath, EngineFormat format, String samplePath) throws IOException {
+        if (!Files.isRegularFile(packPath)) return null;
+        return loadIfCurrent(packPath, format, scanSources(samplePath));
+    }
+
+    private static SampleBank loadIfCurrent(Path packPath, EngineFormat format, List<SourceFile> sources)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(packPath, StandardOpenOption.READ)) {
+            ByteBuffer map = map(channel, packPath);
+            if (!isFormat(map, format) || !matchesSources(map, sources, packPath)) return null;
+            return readSamples(map, format, packPath);
+        }
+    }
+
+    /**
+     * Maps a packed bank in one call and copies its samples into a new SampleBank, without
+     * checking its source files. Returns null if the pack was built for another format.
+     */
+    public static SampleBank load(Path packPath, EngineFormat format) throws IOException {
+        try (FileChannel channel = FileChannel.open(packPath, StandardOpenOption.READ)) {
+            ByteBuffer map = map(channel, packPath);
+            return isFormat(map, format) ? readSamples(map, format, packPath) : null;
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, Path packPath) throws IOException {
+        ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        if (map.capacity() < HEADER_BYTES || map.getInt(0) != MAGIC) {
+            throw new IOException("Not a sample pack: " + packPath);
+        }
+        if (map.getInt(4) != VERSION) {
+            throw new IOException("Unsupported sample pack version " + map.getInt(4) + ": " + packPath);
+        }
+        return map;
+    }
+
+    private static boolean isFormat(ByteBuffer map, EngineFormat format) {
+        return map.getInt(8) == format.getSampleRate() && map.getInt(12) == format.getChannels();
+    }
+
+    /**
+     * Compares the pack's source table with the files on disk. Files with unchanged metadata are
+     * taken as unchanged; the others are hashed, and if their contents still match, the pack's
+     * stored modification time is updated so the next start does not hash them again.
+     */
+    private static boolean matchesSources(ByteBuffer map, List<SourceFile> sources, Path packPath) throws IOException {
+        if (map.getInt(20) != sources.size()) return false;
+
+        int record = HEADER_BYTES + map.getInt(16) * ENTRY_BYTES;
+        List<Integer> touched = new ArrayList<>();
+        for (SourceFile source : sources) {
+            if (record + SOURCE_BYTES > map.capacity()) {
+                throw new IOException("Corrupt sample pack source table: " + packPath);
+            }
+            int nameLength = map.getInt(record + 24);
+            if (nameLength < 0 || record + SOURCE_BYTES + nameLength > map.capacity()) {
+                throw new IOException("Corrupt sample pack source table: " + packPath);
+            }
+            byte[] name = new byte[nameLength];
+            map.get(record + SOURCE_BYTES, name);
+            if (map.getInt(record) != source.bolId
+                    || !source.file.getName().equals(new String(name, StandardCharsets.UTF_8))) return false;
+
+            long storedCrc = map.getInt(record + 4) & 0xFFFFFFFFL;
+            if (map.getLong(record + 8) == source.size && map.getLong(record + 16) == source.modified) {
+                source.crc = storedCrc;
+            } else {
+                source.crc = crc(source.file);
+                if (source.crc != storedCrc) return false;
+                touched.add(record);
+            }
+            record += SOURCE_BYTES + nameLength;
+        }
+        if (!touched.isEmpty()) refreshModified(packPath, touched, sources, map);
+        return true;
+    }
+
+    private static void refreshModified(Path packPath, List<Integer> records, List<SourceFile> sources, ByteBuffer map) {
+        try (FileChannel out = FileChannel.open(packPath, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(2 * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int record : records) {
+                int bolId = map.getInt(record);
+                for (SourceFile source : sources) {
+                    if (source.bolId != bolId) continue;
+                    value.clear();
+                    value.putLong(source.size).putLong(source.modified).flip();
+                    out.write(value, record + 8);
+                }
+            }
+        } catch (IOException e) {
+            // Only costs a rehash of the same files on the next start
+            System.err.println("Could not refresh sample pack " + packPath + ": " + e.getMessage());
+        }
+    }
+
+    private static SampleBank readSamples(ByteBuffer map, EngineFormat format, Path packPath) throws IOException {
+        int entryCount = map.getInt(16);
+        if (entryCount < 0 || HEADER_BYTES + (long) entryCount * ENTRY_BYTES > map.capacity()) {
+            throw new IOException("Corrupt sample pack table: " + packPath);
+        }
+
+        SampleBank bank = new SampleBank(format);
+        for (int x = 0; x < entryCount; x++) {
+            int entry = HEADER_BYTES + x * ENTRY_BYTES;
+            int bolId = map.getInt(entry);
+            int channels = map.getInt(entry + 8);
+            int frames = map.getInt(entry + 12);
+            long offset = map.getLong(entry + 16);
+            long length = map.getLong(entry + 24);
+            int onset = map.getInt(entry + 32);
+            int tail = map.getInt(entry + 36);
+            if (bolId < 0 || bolId >= SampleBank.CAPACITY || channels != format.getChannels() || frames < 0
+                    || length != (long) frames * channels * Float.BYTES || offset < 0 || offset + length > map.capacity()
+                    || onset < 0 || onset > tail || tail > frames) {
+                throw new IOException("Corrupt sample pack entry " + x + " (bol " + bolId + "): " + packPath);
+            }
+
+            float[] data = new float[frames * channels];
+            map.slice((int) offset, (int) length).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(data);
+            PcmSample sample = new PcmSample(Bol.getBolVarName(bolId) + ".wav", data, channels);
+            if (!bank.put(bolId, sample, onset, tail)) {
+                throw new IOException("Corrupt sample pack entry " + x + " (bol " + bolId + "): " + packPath);
+            }
+            bank.getIndex().setGain(bolId, map.getFloat(entry + 40));
+            bank.getIndex().setLevels(bolId, map.getFloat(entry + 44), map.getFloat(entry + 48),
+                    map.getFloat(entry + 52));
+        }
+        return bank;
+    }
+
+    /**
+     * Writes every sample of a bank to a pack file, keyed on the source WAVs under the sample path
+     */
+    public static void write(SampleBank bank, String samplePath, Path packPath) throws IOException {
+        write(bank, scanSources(samplePath), packPath);
+    }
+
+    /**
+     * Writes every sample of a bank, with its index entries, to a pack file.
+     * Written to a temporary file first so a reader never maps a half-written pack.
+     */
+    static void write(SampleBank bank, List<SourceFile> sources, Path packPath) throws IOException {
+        EngineFormat format = bank.getFormat();
+        SampleIndex index = bank.getIndex();
+
+        long sourceBytes = 0;
+        for (SourceFile source : sources) {
+            if (source.crc == -1) source.crc = crc(source.file);
+            sourceBytes += SOURCE_BYTES + source.file.getName().getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        int entryCount = bank.getLoadedCount();
+        // Samples start on a 16-byte boundary so the mapped float data stays aligned
+        long dataStart = (HEADER_BYTES + (long) entryCount * ENTRY_BYTES + sourceBytes + 15) & ~15L;
+        ByteBuffer table = ByteBuffer.allocate((int) dataStart).order(ByteOrder.LITTLE_ENDIAN);
+        table.putInt(MAGIC).putInt(VERSION).putInt(format.getSampleRate()).putInt(format.getChannels())
+                .putInt(entryCount).putInt(sources.size()).putLong(0);
+
+        long offset = dataStart;
+        for (int bolId = 0; bolId < SampleBank.CAPACITY; bolId++) {
+            PcmSample sample = bank.get(bolId);
+            if (sample == null) continue;
+
+            long length = (long) sample.getData().length * Float.BYTES;
+            table.putInt(bolId).putInt(format.getSampleRate()).putInt(sample.getChannels())
+                    .putInt(sample.getFrames()).putLong(offset).putLong(length)
+                    .putInt(index.getOnsetFrame(bolId)).putInt(index.getTailFrame(bolId))
+                    .putFloat(index.getGain(bolId)).putFloat(index.getPeak(bolId)).putFloat(index.getRms(bolId))
+                    .putFloat(index.getLoudness(bolId)).putInt(0).putInt(0);
+            offset += length;
+        }
+        for (SourceFile source : sources) {
+            byte[] name = source.file.getName().getBytes(StandardCharsets.UTF_8);
+            table.putInt(source.bolId).putInt((int) source.crc).putLong(source.size).putLong(source.modified)
+                    .putInt(name.length).put(name);
+        }
+        table.position((int) dataStart).flip();
+
+        Path dir = packPath.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, packPath.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                WavWriter.writeFully(out, table);
+
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+                for (int bolId = 0; bolId < SampleBank.CAPACITY; bolId++) {
+                    PcmSample sample = bank.get(bolId);
+                    if (sample == null) continue;
+
+                    float[] data = sample.getData();
+                    int perBuffer = buffer.capacity() / Float.BYTES;
+                    for (int pos = 0; pos < data.length; pos += perBuffer) {
+                        int n = Math.min(perBuffer, data.length - pos);
+                        buffer.clear();
+                        buffer.asFloatBuffer().put(data, pos, n);
+                        buffer.limit(n * Float.BYTES);
+                        WavWriter.writeFully(out, buffer);
+                    }
+                }
+            }
+            Files.move(temp, packPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Lists the source WAV of every bol under a sample path with its size and modification time,
+     * without reading any of them
+     */
+    static List<SourceFile> scanSources(String samplePath) throws IOException {
+        List<SourceFile> sources = new ArrayList<>();
+        for (int bolId = 0; bolId < SampleBank.CAPACITY; bolId++) {
+            File file = SampleBank.findSampleFile(samplePath, bolId);
+            if (file == null) continue;
+
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            sources.add(new SourceFile(bolId, file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+        }
+        return sources;
+    }
+
+    /**
+     * Computes the CRC32 of a file's contents
+     */
+    private static long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Builds or refreshes a pack from a sample directory.
+     * Usage: PackedBank &lt;samplePath&gt; [packFile] [sampleRate] [channels]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: PackedBank <samplePath> [packFile] [sampleRate] [channels]");
+            return;
+        }
+        String samplePath = args[0];
+        Path packPath = args.length > 1 ? Paths.get(args[1]) : Paths.get(samplePath, DEFAULT_FILE_NAME);
+        EngineFormat format = new EngineFormat(
+                args.length > 2 ? Integer.parseInt(args[2]) : EngineFormat.DEFAULT_SAMPLE_RATE,
+                args.length > 3 ? Integer.parseInt(args[3]) : EngineFormat.DEFAULT_CHANNELS);
+
+        long start = System.nanoTime();
+        SampleBank bank = loadOrBuild(samplePath, packPath, format);
+        System.out.printf("%s: %d samples, %d bytes, ready in %.1f ms%n", packPath, bank.getLoadedCount(),
+                Files.size(packPath), (System.nanoTime() - start) / 1e6);
+    }
+}
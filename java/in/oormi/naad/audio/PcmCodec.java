@@ -0,0 +1,100 @@
+package in.oormi.naad.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversions between little-endian PCM and float samples.
+ */
+public final class PcmCodec {
+
+    private static final float SCALE_IN = 1.0f / 32768.0f;
+    private static final float SCALE_OUT = 32767.0f;
+
+    private PcmCodec() {
+    }
+
+    /**
+     * Decodes 16-bit signed little-endian PCM into floats in [-1, 1)
+     */
+    public static void decode16(byte[] src, int srcOffset, float[] dst, int dstOffset, int samples) {
+        for (int i = 0; i < samples; i++) {
+            int b = srcOffset + i * 2;
+            int value = (src[b] & 0xFF) | (src[b + 1] << 8);
+            dst[dstOffset + i] = value * SCALE_IN;
+        }
+    }
+
+    /**
+     * Decodes little-endian PCM (8, 16, 24 or 32 bit integer, or 32-bit float) from a buffer into floats
+     */
+    public static void decode(ByteBuffer src, int bitsPerSample, boolean isFloat,
+                              float[] dst, int dstOffset, int samples) {
+        int base = src.position();
+        if (isFloat) {
+            for (int i = 0; i < samples; i++) {
+                dst[dstOffset + i] = src.getFloat(base + i * 4);
+            }
+            return;
+        }
+        switch (bitsPerSample) {
+            case 8:
+                // 8-bit WAV is unsigned
+                for (int i = 0; i < samples; i++) {
+                    dst[dstOffset + i] = ((src.get(base + i) & 0xFF) - 128) / 128.0f;
+                }
+                break;
+            case 16:
+                for (int i = 0; i < samples; i++) {
+                    dst[dstOffset + i] = src.getShort(base + i * 2) * SCALE_IN;
+                }
+                break;
+            case 24:
+                for (int i = 0; i < samples; i++) {
+                    int b = base + i * 3;
+                    int value = (src.get(b) & 0xFF) | ((src.get(b + 1) & 0xFF) << 8) | (src.get(b + 2) << 16);
+                    dst[dstOffset + i] = value / 8388608.0f;
+                }
+                break;
+            case 32:
+                for (int i = 0; i < samples; i++) {
+                    dst[dstOffset + i] = (float) (src.getInt(base + i * 4) / 2147483648.0);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported bit depth: " + bitsPerSample);
+        }
+    }
+
+    /**
+     * Encodes floats into 16-bit signed little-endian PCM, clipping to full scale
+     */
+    public static void encode16(float[] src, int srcOffset, byte[] dst, int dstOffset, int samples) {
+        for (int i = 0; i < samples; i++) {
+            float s = src[srcOffset + i];
+            if (s > 1.0f) s = 1.0f;
+            else if (s < -1.0f) s = -1.0f;
+            int value = (int) (s * SCALE_OUT);
+            int b = dstOffset + i * 2;
+            dst[b] = (byte) value;
+            dst[b + 1] = (byte) (value >> 8);
+        }
+    }
+
+    /**
+     * Encodes floats into a little-endian buffer in the given file encoding
+     */
+    public static void encode(float[] src, int srcOffset, int samples, WavWriter.Encoding encoding, ByteBuffer dst) {
+        if (encoding == WavWriter.Encoding.FLOAT_32) {
+            for (int i = 0; i < samples; i++) {
+                dst.putFloat(src[srcOffset + i]);
+            }
+            return;
+        }
+        for (int i = 0; i < samples; i++) {
+            float s = src[srcOffset + i];
+            if (s > 1.0f) s = 1.0f;
+            else if (s < -1.0f) s = -1.0f;
+            dst.putShort((short) (s * SCALE_OUT));
+        }
+    }
+}
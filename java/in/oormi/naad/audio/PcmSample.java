@@ -0,0 +1,148 @@
+package in.oormi.naad.audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A bol sample decoded once into interleaved float PCM in the engine format.
+ * Channel layout and sample rate are converted at load time, so the mixer never sees another format.
+ */
+public class PcmSample {
+
+    public static final int ENVELOPE_WINDOW = 256;
+
+    private final String name;
+    private final float[] data;
+    private final int frames;
+    private final int channels;
+    private final float[] envelope;
+
+    public PcmSample(String name, float[] data, int channels) {
+        this.name = name;
+        this.data = data;
+        this.channels = channels;
+        this.frames = data.length / channels;
+        this.envelope = computeEnvelope();
+    }
+
+    /**
+     * Computes the peak level of each window of frames, used to rank voices by loudness
+     */
+    private float[] computeEnvelope() {
+        float[] env = new float[(frames + ENVELOPE_WINDOW - 1) / ENVELOPE_WINDOW];
+        for (int i = 0; i < data.length; i++) {
+            int w = i / channels / ENVELOPE_WINDOW;
+            float a = Math.abs(data[i]);
+            if (a > env[w]) env[w] = a;
+        }
+        return env;
+    }
+
+    /**
+     * Gets the approximate level of the sample around a frame position
+     */
+    public float getLevelAt(int frame) {
+        if (frame < 0 || frame >= frames) return 0.0f;
+        return envelope[frame / ENVELOPE_WINDOW];
+    }
+
+    /**
+     * Decodes a WAV file into a sample with the engine's channel layout.
+     * RIFF files are read through a memory map; anything else goes through Java Sound.
+     */
+    public static PcmSample load(File file, EngineFormat format) throws IOException, UnsupportedAudioFileException {
+        WavFile wav;
+        try {
+            wav = WavFile.open(file.toPath());
+        } catch (UnsupportedAudioFileException e) {
+            return loadWithAudioSystem(file, format);
+        }
+        return new PcmSample(file.getName(), convert(wav.decode(), wav.getChannels(), wav.getSampleRate(), format),
+                format.getChannels());
+    }
+
+    /**
+     * Loads a sample through a disk cache of converted samples, converting and storing it on a miss
+     */
+    public static PcmSample load(File file, EngineFormat format, ConvertedSampleCache cache)
+            throws IOException, UnsupportedAudioFileException {
+        if (cache == null) return load(file, format);
+
+        PcmSample sample = cache.get(file, format);
+        if (sample != null) return sample;
+
+        sample = load(file, format);
+        try {
+            cache.put(file, format, sample);
+        } catch (IOException e) {
+            System.err.println("Could not cache converted sample " + file + ": " + e.getMessage());
+        }
+        return sample;
+    }
+
+    private static PcmSample loadWithAudioSystem(File file, EngineFormat format)
+            throws IOException, UnsupportedAudioFileException {
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(file)) {
+            AudioFormat src = source.getFormat();
+            AudioFormat pcm16 = new AudioFormat(src.getSampleRate(), 16, src.getChannels(), true, false);
+            try (AudioInputStream in = AudioSystem.getAudioInputStream(pcm16, source)) {
+                byte[] bytes = in.readAllBytes();
+                int srcChannels = pcm16.getChannels();
+                int frames = bytes.length / (2 * srcChannels);
+                float[] decoded = new float[frames * srcChannels];
+                PcmCodec.decode16(bytes, 0, decoded, 0, decoded.length);
+                float[] converted = convert(decoded, srcChannels, Math.round(src.getSampleRate()), format);
+                return new PcmSample(file.getName(), converted, format.getChannels());
+            }
+        }
+    }
+
+    /**
+     * Converts decoded interleaved audio to the engine's channel count and sample rate.
+     * The rate conversion runs at the smaller channel count, before upmixing or after downmixing.
+     */
+    static float[] convert(float[] src, int srcChannels, int srcRate, EngineFormat format) {
+        int dstChannels = format.getChannels();
+        if (srcRate == format.getSampleRate()) return remap(src, srcChannels, dstChannels);
+
+        Resampler resampler = new Resampler(srcRate, format.getSampleRate());
+        if (dstChannels < srcChannels) {
+            return resampler.process(remap(src, srcChannels, dstChannels), dstChannels);
+        }
+        return remap(resampler.process(src, srcChannels), srcChannels, dstChannels);
+    }
+
+    /**
+     * Maps interleaved frames between channel counts (mono is duplicated, extra channels are dropped)
+     */
+    static float[] remap(float[] src, int srcChannels, int dstChannels) {
+        if (srcChannels == dstChannels) return src;
+
+        int frames = src.length / srcChannels;
+        float[] dst = new float[frames * dstChannels];
+        for (int f = 0; f < frames; f++) {
+            for (int c = 0; c < dstChannels; c++) {
+                dst[f * dstChannels + c] = src[f * srcChannels + Math.min(c, srcChannels - 1)];
+            }
+        }
+        return dst;
+    }
+
+    public String getName() { return name; }
+    public float[] getData() { return data; }
+    public int getFrames() { return frames; }
+    public int getChannels() { return channels; }
+
+    @Override
+    public String toString() {
+        return "PcmSample{" +
+                "name='" + name + '\'' +
+                ", frames=" + frames +
+                ", channels=" + channels +
+                '}';
+    }
+}
@@ -0,0 +1,144 @@
+package in.oormi.naad.audio;
+
+/**
+ * Band-limited polyphase sample rate converter.
+ * The rate ratio is reduced to L/M and a Kaiser-windowed sinc prototype is split into L phases,
+ * so each output sample is one short dot product with precomputed coefficients.
+ * Intended for converting samples once at load time, not for the render path.
+ */
+public class Resampler {
+
+    public static final int DEFAULT_ZERO_CROSSINGS = 32;
+    public static final double DEFAULT_KAISER_BETA = 8.6;
+
+    /** Filter cutoff as a fraction of the lower Nyquist frequency; the transition band ends just below Nyquist */
+    private static final double PASSBAND = 0.91;
+
+    private final int srcRate;
+    private final int dstRate;
+    private final int upFactor;
+    private final int downFactor;
+    private final int tapsPerPhase;
+    private final float[][] phases;
+
+    public Resampler(int srcRate, int dstRate) {
+        this(srcRate, dstRate, DEFAULT_ZERO_CROSSINGS, DEFAULT_KAISER_BETA);
+    }
+
+    public Resampler(int srcRate, int dstRate, int zeroCrossings, double kaiserBeta) {
+        if (srcRate <= 0 || dstRate <= 0) {
+            throw new IllegalArgumentException("Invalid sample rates: " + srcRate + " -> " + dstRate);
+        }
+        int g = gcd(srcRate, dstRate);
+        this.srcRate = srcRate;
+        this.dstRate = dstRate;
+        this.upFactor = dstRate / g;
+        this.downFactor = srcRate / g;
+
+        // Cutoff relative to the source rate; downsampling also has to reject above the new Nyquist
+        double cutoff = PASSBAND * Math.min(1.0, (double) dstRate / srcRate);
+        this.tapsPerPhase = 2 * (int) Math.ceil(zeroCrossings / cutoff);
+        this.phases = designPhases(cutoff, kaiserBeta);
+    }
+
+    /**
+     * Builds the polyphase filter bank. Phase p holds the taps that apply at source offset p/L,
+     * ordered from the oldest input sample to the newest, and normalized to unity DC gain.
+     */
+    private float[][] designPhases(double cutoff, double beta) {
+        float[][] bank = new float[upFactor][tapsPerPhase];
+        int half = tapsPerPhase / 2;
+        double i0Beta = besselI0(beta);
+
+        for (int p = 0; p < upFactor; p++) {
+            double frac = (double) p / upFactor;
+            double sum = 0.0;
+            for (int k = 0; k < tapsPerPhase; k++) {
+                // Distance in source samples from the output position to input sample (base - half + 1 + k)
+                double x = (k - half + 1) - frac;
+                double w = x / half;
+                double window = Math.abs(w) >= 1.0 ? 0.0 : besselI0(beta * Math.sqrt(1.0 - w * w)) / i0Beta;
+                double tap = cutoff * sinc(cutoff * x) * window;
+                bank[p][k] = (float) tap;
+                sum += tap;
+            }
+            for (int k = 0; k < tapsPerPhase; k++) {
+                bank[p][k] /= (float) sum;
+            }
+        }
+        return bank;
+    }
+
+    /**
+     * Converts interleaved audio to the destination rate; the output covers the same duration
+     */
+    public float[] process(float[] src, int channels) {
+        if (upFactor == downFactor) return src.clone();
+
+        int srcFrames = src.length / channels;
+        long dstFrames = ((long) srcFrames * upFactor + downFactor - 1) / downFactor;
+        float[] dst = new float[(int) dstFrames * channels];
+        int half = tapsPerPhase / 2;
+
+        for (int n = 0; n < dstFrames; n++) {
+            long pos = (long) n * downFactor;
+            int base = (int) (pos / upFactor);
+            float[] taps = phases[(int) (pos % upFactor)];
+            int first = base - half + 1;
+
+            for (int c = 0; c < channels; c++) {
+                float acc = 0.0f;
+                if (first >= 0 && first + tapsPerPhase <= srcFrames) {
+                    int idx = first * channels + c;
+                    for (int k = 0; k < tapsPerPhase; k++, idx += channels) {
+                        acc += taps[k] * src[idx];
+                    }
+                } else {
+                    // Edges: samples outside the source are zero
+                    for (int k = 0; k < tapsPerPhase; k++) {
+                        int f = first + k;
+                        if (f >= 0 && f < srcFrames) acc += taps[k] * src[f * channels + c];
+                    }
+                }
+                dst[n * channels + c] = acc;
+            }
+        }
+        return dst;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0.0) return 1.0;
+        double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    /**
+     * Zeroth-order modified Bessel function of the first kind, by its power series
+     */
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        double q = x * x / 4.0;
+        for (int k = 1; k < 50; k++) {
+            term *= q / ((double) k * k);
+            sum += term;
+            if (term < sum * 1e-12) break;
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    public int getSrcRate() { return srcRate; }
+    public int getDstRate() { return dstRate; }
+    public int getUpFactor() { return upFactor; }
+    public int getDownFactor() { return downFactor; }
+    public int getTapsPerPhase() { return tapsPerPhase; }
+}
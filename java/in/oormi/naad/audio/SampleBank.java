@@ -0,0 +1,153 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Bol;
+import in.oormi.naad.core.VariationAssigner;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * In-memory bank of decoded bol samples, indexed directly by bol ID.
+ * Every variation is decoded once up front; lookups on the render path are a plain array access.
+ * Each sample is analysed as it is stored, so the index always has its onset and tail.
+ */
+public class SampleBank {
+
+    public static final int CAPACITY = Bol.MAXBOLS * Bol.MAXBOLVARS;
+
+    private final EngineFormat format;
+    private final PcmSample[] samples = new PcmSample[CAPACITY];
+    private final SampleIndex index;
+    private int loadedCount = 0;
+
+    public SampleBank(EngineFormat format) {
+        this(format, new SampleIndex(format, CAPACITY));
+    }
+
+    private SampleBank(EngineFormat format, SampleIndex index) {
+        this.format = format;
+        this.index = index;
+    }
+
+    /**
+     * Decodes every bol variation found under the sample path
+     */
+    public static SampleBank load(String samplePath, EngineFormat format) {
+        return load(samplePath, format, null);
+    }
+
+    /**
+     * Decodes every bol variation found under the sample path, reusing conversions from a disk cache,
+     * then measures their loudness to level the variations. The cache may be null.
+     */
+    public static SampleBank load(String samplePath, EngineFormat format, ConvertedSampleCache cache) {
+        SampleBank bank = new SampleBank(format);
+        for (int bolId = 0; bolId < CAPACITY; bolId++) {
+            File file = findSampleFile(samplePath, bolId);
+            if (file == null) continue;
+
+            try {
+                bank.put(bolId, PcmSample.load(file, format, cache));
+            } catch (IOException | UnsupportedAudioFileException e) {
+                System.err.println("Error loading sample " + file + ": " + e.getMessage());
+            }
+        }
+        LoudnessAnalyzer.analyze(bank);
+        return bank;
+    }
+
+    /**
+     * Finds the WAV file for a bol ID: first in its species folder (Na/Na01.wav), then in the sample root
+     */
+    public static File findSampleFile(String samplePath, int bolId) {
+        Bol bol = new Bol();
+        bol.setBolType(bolId);
+        String path = bol.getAudioFilePath(samplePath);
+        if (path == null) return null;
+
+        File file = new File(path);
+        if (file.isFile()) return file;
+
+        file = new File(samplePath, Bol.getBolVarName(bolId) + ".wav");
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Gets the sample for a bol ID, or null for silence, unknown IDs and missing files
+     */
+    public PcmSample get(int bolId) {
+        if (bolId < 0 || bolId >= CAPACITY) return null;
+        return samples[bolId];
+    }
+
+    /**
+     * Stores a sample under a bol ID and analyses it for the index
+     */
+    public boolean put(int bolId, PcmSample sample) {
+        if (!store(bolId, sample)) return false;
+        index.analyze(bolId, sample);
+        return true;
+    }
+
+    /**
+     * Stores a sample whose onset and tail are already known, skipping the analysis
+     */
+    public boolean put(int bolId, PcmSample sample, int onsetFrame, int tailFrame) {
+        if (!store(bolId, sample)) return false;
+        index.set(bolId, onsetFrame, tailFrame);
+        return true;
+    }
+
+    private boolean store(int bolId, PcmSample sample) {
+        if (bolId < 0 || bolId >= CAPACITY) return false;
+        if (samples[bolId] == null && sample != null) loadedCount++;
+        if (samples[bolId] != null && sample == null) loadedCount--;
+        samples[bolId] = sample;
+        return true;
+    }
+
+    /**
+     * Copies the bank and its index; the samples themselves, which never change, are shared
+     */
+    public SampleBank copy() {
+        SampleBank copy = new SampleBank(format, index.copy());
+        System.arraycopy(samples, 0, copy.samples, 0, CAPACITY);
+        copy.loadedCount = loadedCount;
+        return copy;
+    }
+
+    public boolean contains(int bolId) {
+        return get(bolId) != null;
+    }
+
+    /**
+     * Creates a variation assigner that chooses among the variations loaded in this bank
+     */
+    public VariationAssigner newVariationAssigner(VariationAssigner.Mode mode, long seed) {
+        return new VariationAssigner(mode, seed, this::contains);
+    }
+
+    /**
+     * Gets the heap used by decoded sample data in bytes
+     */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (PcmSample sample : samples) {
+            if (sample != null) bytes += (long) sample.getData().length * Float.BYTES;
+        }
+        return bytes;
+    }
+
+    public EngineFormat getFormat() { return format; }
+    public SampleIndex getIndex() { return index; }
+    public int getLoadedCount() { return loadedCount; }
+
+    @Override
+    public String toString() {
+        return "SampleBank{" +
+                "loaded=" + loadedCount +
+                ", memoryBytes=" + getMemoryBytes() +
+                ", format=" + format +
+                '}';
+    }
+}
@@ -0,0 +1,165 @@
+package in.oormi.naad.audio;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a SampleBank in the background, decoding and converting files concurrently.
+ * Callers start the load early, carry on with work that does not need audio, and block
+ * only when they first need the bank. The time from start to a ready bank is recorded.
+ * With a pack file the bank is mapped from it while it is current, and the pack is rebuilt
+ * after a decode when it is missing or stale.
+ */
+public class SampleBankLoader {
+
+    public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final String samplePath;
+    private final EngineFormat format;
+    private final ConvertedSampleCache diskCache;
+    private final int threads;
+    private final Path packPath;
+
+    private CompletableFuture<SampleBank> future;
+    private volatile long startNanos;
+    private volatile long readyNanos;
+
+    public SampleBankLoader(String samplePath, EngineFormat format) {
+        this(samplePath, format, null, DEFAULT_THREADS);
+    }
+
+    public SampleBankLoader(String samplePath, EngineFormat format, Path packPath) {
+        this(samplePath, format, null, DEFAULT_THREADS, packPath);
+    }
+
+    public SampleBankLoader(String samplePath, EngineFormat format, ConvertedSampleCache diskCache, int threads) {
+        this(samplePath, format, diskCache, threads, null);
+    }
+
+    public SampleBankLoader(String samplePath, EngineFormat format, ConvertedSampleCache diskCache, int threads,
+                            Path packPath) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Loader needs at least one thread: " + threads);
+        }
+        this.samplePath = samplePath;
+        this.format = format;
+        this.diskCache = diskCache;
+        this.threads = threads;
+        this.packPath = packPath;
+    }
+
+    /**
+     * Starts loading on a bounded pool of daemon threads; later calls return the same future
+     */
+    public synchronized CompletableFuture<SampleBank> start() {
+        if (future != null) return future;
+
+        startNanos = System.nanoTime();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "naad-bank-loader-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (packPath == null) {
+            future = decode(pool);
+        } else {
+            future = CompletableFuture.supplyAsync(this::loadPack, pool)
+                    .thenCompose(bank -> bank != null ? CompletableFuture.completedFuture(bank)
+                            : decode(pool).thenApply(this::writePack));
+        }
+        future = future.thenApply(bank -> {
+            readyNanos = System.nanoTime();
+            return bank;
+        });
+        future.whenComplete((bank, e) -> pool.shutdown());
+        return future;
+    }
+
+    private CompletableFuture<SampleBank> decode(ExecutorService pool) {
+        List<CompletableFuture<PcmSample>> loads = new ArrayList<>(SampleBank.CAPACITY);
+        for (int bolId = 0; bolId < SampleBank.CAPACITY; bolId++) {
+            int id = bolId;
+            loads.add(CompletableFuture.supplyAsync(() -> loadSample(id), pool));
+        }
+
+        // Samples are stored from one thread once all decodes finish, so the bank needs no locking
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            SampleBank bank = new SampleBank(format);
+            for (int bolId = 0; bolId < loads.size(); bolId++) {
+                PcmSample sample = loads.get(bolId).join();
+                if (sample != null) bank.put(bolId, sample);
+            }
+            LoudnessAnalyzer.analyze(bank);
+            return bank;
+        });
+    }
+
+    private SampleBank loadPack() {
+        try {
+            return PackedBank.loadIfCurrent(packPath, format, samplePath);
+        } catch (IOException e) {
+            // An unreadable pack only means decoding the WAVs this time; it is rewritten after
+            System.err.println("Error reading sample pack " + packPath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private SampleBank writePack(SampleBank bank) {
+        try {
+            PackedBank.write(bank, samplePath, packPath);
+        } catch (IOException e) {
+            System.err.println("Error writing sample pack " + packPath + ": " + e.getMessage());
+        }
+        return bank;
+    }
+
+    private PcmSample loadSample(int bolId) {
+        File file = SampleBank.findSampleFile(samplePath, bolId);
+        if (file == null) return null;
+        try {
+            return PcmSample.load(file, format, diskCache);
+        } catch (IOException | UnsupportedAudioFileException e) {
+            System.err.println("Error loading sample " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Blocks until the bank is ready, starting the load first if needed
+     */
+    public SampleBank await() throws InterruptedException {
+        try {
+            return start().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sample bank failed to load", e.getCause());
+        }
+    }
+
+    public synchronized boolean isReady() {
+        return future != null && future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    /**
+     * Gets the time from start to a ready bank in milliseconds, or -1 while it is still loading
+     */
+    public double getTimeToReadyMs() {
+        long ready = readyNanos;
+        return ready == 0 ? -1.0 : (ready - startNanos) / 1e6;
+    }
+
+    public String getSamplePath() { return samplePath; }
+    public EngineFormat getFormat() { return format; }
+    public int getThreads() { return threads; }
+    public Path getPackPath() { return packPath; }
+}
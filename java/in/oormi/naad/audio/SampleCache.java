@@ -0,0 +1,246 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Bol;
+import in.oormi.naad.core.Composition;
+import in.oormi.naad.core.Sequence;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory-budgeted cache of decoded samples, loaded on demand into a SampleBank.
+ * Instead of decoding every variation up front, only the bols a composition uses are kept,
+ * and once the byte budget is exceeded the least recently or least frequently used samples
+ * are evicted. Call prefetch before playing so nothing has to be decoded on the render path.
+ *
+ * Samples are loaded and evicted in a private bank. Every change publishes a copy of it as the
+ * bank returned by getBank, which is never changed afterwards, so a render thread can read it
+ * while the cache moves on. An attached engine is switched to each new copy, which also drops
+ * the composites it premixed from evicted samples; a renderer keeps the bank it was built with.
+ */
+public class SampleCache {
+
+    public static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Which sample to evict when the budget is exceeded
+     */
+    public enum EvictionPolicy {
+        LRU,
+        LFU
+    }
+
+    private final String samplePath;
+    // Only changed under the cache's lock; playback reads the copies published from it
+    private final SampleBank working;
+    private volatile SampleBank bank;
+    private AudioEngine engine;
+    private boolean changed = false;
+    private final ConvertedSampleCache diskCache;
+    private final long budgetBytes;
+    private final EvictionPolicy policy;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Bols with no sample file are remembered so repeated prefetches do not search the disk again
+    private final boolean[] unavailable = new boolean[SampleBank.CAPACITY];
+    private long usedBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    private static class Entry {
+        final long bytes;
+        long uses = 1;
+
+        Entry(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    public SampleCache(String samplePath, EngineFormat format) {
+        this(samplePath, format, DEFAULT_BUDGET_BYTES, EvictionPolicy.LRU, null);
+    }
+
+    public SampleCache(String samplePath, EngineFormat format, long budgetBytes, EvictionPolicy policy,
+                       ConvertedSampleCache diskCache) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Cache budget must be positive: " + budgetBytes);
+        }
+        this.samplePath = samplePath;
+        this.working = new SampleBank(format);
+        this.bank = working.copy();
+        this.budgetBytes = budgetBytes;
+        this.policy = policy;
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * Gets a sample, loading it into the bank on a miss; returns null if the bol has no sample file
+     */
+    public synchronized PcmSample get(int bolId) {
+        PcmSample sample = load(bolId);
+        publish();
+        return sample;
+    }
+
+    private PcmSample load(int bolId) {
+        if (bolId < 0 || bolId >= SampleBank.CAPACITY || unavailable[bolId]) return null;
+
+        Entry entry = entries.get(bolId);
+        if (entry != null) {
+            entry.uses++;
+            hitCount++;
+            return working.get(bolId);
+        }
+
+        missCount++;
+        File file = SampleBank.findSampleFile(samplePath, bolId);
+        if (file == null) {
+            unavailable[bolId] = true;
+            return null;
+        }
+
+        PcmSample sample;
+        try {
+            sample = PcmSample.load(file, working.getFormat(), diskCache);
+        } catch (IOException | UnsupportedAudioFileException e) {
+            System.err.println("Error loading sample " + file + ": " + e.getMessage());
+            unavailable[bolId] = true;
+            return null;
+        }
+
+        long bytes = (long) sample.getData().length * Float.BYTES;
+        evictFor(bytes);
+        working.put(bolId, sample);
+        // Levels are relative to the other cached variations of the same bol
+        LoudnessAnalyzer.measure(bolId, sample, working.getIndex(), working.getFormat());
+        working.getIndex().normalizeGains(bolId / Bol.MAXBOLVARS);
+        entries.put(bolId, new Entry(bytes));
+        usedBytes += bytes;
+        changed = true;
+        return sample;
+    }
+
+    /**
+     * Publishes a copy of the private bank if it changed, and switches the attached engine to it
+     */
+    private void publish() {
+        if (!changed) return;
+        bank = working.copy();
+        changed = false;
+        if (engine != null) engine.setSampleBank(bank);
+    }
+
+    /**
+     * Switches an engine to the cached samples now and to every later change of them; null detaches
+     */
+    public synchronized void attach(AudioEngine engine) {
+        this.engine = engine;
+        if (engine != null) engine.setSampleBank(bank);
+    }
+
+    /**
+     * Warms every bol a composition will play, in the order it plays them
+     */
+    public void prefetch(Composition composition) {
+        prefetch(Timeline.fromComposition(composition, working.getFormat()));
+    }
+
+    /**
+     * Warms every bol of a compiled sequence
+     */
+    public synchronized void prefetch(Sequence sequence) {
+        for (int x = 0; x < sequence.getBolSeqCount(); x++) {
+            load(sequence.getBolIdAt(x));
+            load(sequence.getBolId2At(x));
+        }
+        publish();
+    }
+
+    /**
+     * Warms every bol referenced by a timeline
+     */
+    public synchronized void prefetch(Timeline timeline) {
+        for (Timeline.Segment segment : timeline.getSegments()) {
+            for (int x = 0; x < segment.getCycleLength(); x++) {
+                load(segment.getBolIdAt(x));
+                load(segment.getBolId2At(x));
+            }
+        }
+        publish();
+    }
+
+    /**
+     * Evicts samples until the given number of bytes fits in the budget.
+     * A single sample larger than the budget is still loaded, after evicting everything else.
+     */
+    private void evictFor(long bytes) {
+        while (!entries.isEmpty() && usedBytes + bytes > budgetBytes) {
+            int victim = policy == EvictionPolicy.LFU ? leastFrequentlyUsed() : entries.keySet().iterator().next();
+            Entry entry = entries.remove(victim);
+            working.put(victim, null);
+            usedBytes -= entry.bytes;
+            evictionCount++;
+            changed = true;
+        }
+    }
+
+    /**
+     * Finds the entry with the fewest uses, preferring the least recently used on ties
+     */
+    private int leastFrequentlyUsed() {
+        int victim = -1;
+        long fewest = Long.MAX_VALUE;
+        for (Map.Entry<Integer, Entry> e : entries.entrySet()) {
+            if (e.getValue().uses < fewest) {
+                fewest = e.getValue().uses;
+                victim = e.getKey();
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Drops every cached sample and forgets which bols were missing; the counters are kept
+     */
+    public synchronized void clear() {
+        Arrays.fill(unavailable, false);
+        for (int bolId : entries.keySet()) {
+            working.put(bolId, null);
+        }
+        changed |= !entries.isEmpty();
+        entries.clear();
+        usedBytes = 0;
+        publish();
+    }
+
+    /**
+     * Gets a copy of the cached samples as of the last change, for use by an AudioEngine or OfflineRenderer
+     */
+    public SampleBank getBank() { return bank; }
+
+    public long getBudgetBytes() { return budgetBytes; }
+    public EvictionPolicy getPolicy() { return policy; }
+    public synchronized long getUsedBytes() { return usedBytes; }
+    public synchronized int getSize() { return entries.size(); }
+    public synchronized long getHitCount() { return hitCount; }
+    public synchronized long getMissCount() { return missCount; }
+    public synchronized long getEvictionCount() { return evictionCount; }
+
+    @Override
+    public synchronized String toString() {
+        return "SampleCache{" +
+                "size=" + entries.size() +
+                ", usedBytes=" + usedBytes +
+                ", budgetBytes=" + budgetBytes +
+                ", policy=" + policy +
+                ", hits=" + hitCount +
+                ", misses=" + missCount +
+                ", evictions=" + evictionCount +
+                '}';
+    }
+}
@@ -0,0 +1,194 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Bol;
+import java.util.Arrays;
+
+/**
+ * Per-bol playback index kept alongside a SampleBank: where each sample's transient starts,
+ * where its tail has decayed into silence, its measured levels and the gain it is played at.
+ * Analysed once when a sample is added to the bank, so voices can skip leading silence, stop
+ * at the tail and hit at a consistent level without any per-hit work.
+ */
+public class SampleIndex {
+
+    /** Level relative to the sample's peak at which the transient is considered to start */
+    public static final double ONSET_THRESHOLD_DB = -40.0;
+    /** Level relative to the sample's peak below which the rest of the tail is dropped */
+    public static final double TAIL_THRESHOLD_DB = -60.0;
+    /** Frames kept ahead of the detected onset so the attack is never clipped */
+    public static final double PREROLL_MS = 0.5;
+    /** Largest correction applied when levelling variations, in either direction */
+    public static final double MAX_GAIN_DB = 12.0;
+    /** Highest sample peak a gain may push a sample to */
+    public static final float PEAK_CEILING = 0.98f;
+
+    private final EngineFormat format;
+    private final int[] onsetFrames;
+    private final int[] tailFrames;
+    private final float[] gains;
+    private final float[] peaks;
+    private final float[] rmsLevels;
+    private final float[] loudness;
+
+    public SampleIndex(EngineFormat format, int capacity) {
+        this.format = format;
+        this.onsetFrames = new int[capacity];
+        this.tailFrames = new int[capacity];
+        this.gains = new float[capacity];
+        this.peaks = new float[capacity];
+        this.rmsLevels = new float[capacity];
+        this.loudness = new float[capacity];
+        Arrays.fill(gains, 1.0f);
+        Arrays.fill(loudness, Float.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Copies the index, for a copy of its bank
+     */
+    public SampleIndex copy() {
+        SampleIndex copy = new SampleIndex(format, gains.length);
+        System.arraycopy(onsetFrames, 0, copy.onsetFrames, 0, onsetFrames.length);
+        System.arraycopy(tailFrames, 0, copy.tailFrames, 0, tailFrames.length);
+        System.arraycopy(gains, 0, copy.gains, 0, gains.length);
+        System.arraycopy(peaks, 0, copy.peaks, 0, peaks.length);
+        System.arraycopy(rmsLevels, 0, copy.rmsLevels, 0, rmsLevels.length);
+        System.arraycopy(loudness, 0, copy.loudness, 0, loudness.length);
+        return copy;
+    }
+
+    /**
+     * Analyses a sample and records its onset and tail cut point under a bol ID
+     */
+    public void analyze(int bolId, PcmSample sample) {
+        if (sample == null) {
+            set(bolId, 0, 0);
+            return;
+        }
+        float[] data = sample.getData();
+        int channels = sample.getChannels();
+
+        float peak = 0.0f;
+        for (float v : data) {
+            float a = Math.abs(v);
+            if (a > peak) peak = a;
+        }
+        if (peak == 0.0f) {
+            set(bolId, 0, 0);
+            return;
+        }
+
+        float onsetLevel = (float) (peak * Math.pow(10.0, ONSET_THRESHOLD_DB / 20.0));
+        int onset = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (Math.abs(data[i]) > onsetLevel) {
+                onset = i / channels;
+                break;
+            }
+        }
+        onset = Math.max(0, onset - (int) Math.round(format.msToFrames(PREROLL_MS)));
+
+        float tailLevel = (float) (peak * Math.pow(10.0, TAIL_THRESHOLD_DB / 20.0));
+        int tail = sample.getFrames();
+        for (int i = data.length - 1; i >= 0; i--) {
+            if (Math.abs(data[i]) > tailLevel) {
+                tail = i / channels + 1;
+                break;
+            }
+        }
+        set(bolId, onset, Math.max(onset, tail));
+    }
+
+    /**
+     * Records an onset and tail cut point directly, e.g. from a precomputed index
+     */
+    public void set(int bolId, int onsetFrame, int tailFrame) {
+        onsetFrames[bolId] = onsetFrame;
+        tailFrames[bolId] = tailFrame;
+    }
+
+    /**
+     * Sets the linear gain a bol is played at
+     */
+    public void setGain(int bolId, float gain) {
+        gains[bolId] = gain;
+    }
+
+    /**
+     * Records the measured sample peak, RMS level (both linear) and integrated loudness (LUFS) of a bol
+     */
+    public void setLevels(int bolId, float peak, float rms, float lufs) {
+        peaks[bolId] = peak;
+        rmsLevels[bolId] = rms;
+        loudness[bolId] = lufs;
+    }
+
+    /**
+     * Sets the gains of every bol so all variations of a bol play at the median loudness of that bol
+     */
+    public void normalizeGains() {
+        for (int bol = 0; bol * Bol.MAXBOLVARS < gains.length; bol++) {
+            normalizeGains(bol);
+        }
+    }
+
+    /**
+     * Sets the gains of the variations of one bol (bol ID / MAXBOLVARS) from their measured loudness.
+     * Corrections are limited to MAX_GAIN_DB and never push a sample peak above PEAK_CEILING.
+     */
+    public void normalizeGains(int bol) {
+        int first = bol * Bol.MAXBOLVARS;
+        int last = Math.min(first + Bol.MAXBOLVARS, gains.length);
+
+        float[] measured = new float[last - first];
+        int count = 0;
+        for (int id = first; id < last; id++) {
+            if (loudness[id] != Float.NEGATIVE_INFINITY) measured[count++] = loudness[id];
+        }
+        if (count == 0) return;
+
+        Arrays.sort(measured, 0, count);
+        double reference = count % 2 == 1 ? measured[count / 2]
+                : (measured[count / 2 - 1] + measured[count / 2]) / 2.0;
+
+        for (int id = first; id < last; id++) {
+            if (loudness[id] == Float.NEGATIVE_INFINITY) {
+                gains[id] = 1.0f;
+                continue;
+            }
+            double db = Math.max(-MAX_GAIN_DB, Math.min(MAX_GAIN_DB, reference - loudness[id]));
+            double gain = Math.pow(10.0, db / 20.0);
+            if (peaks[id] * gain > PEAK_CEILING) gain = Math.min(gain, Math.max(1.0, PEAK_CEILING / peaks[id]));
+            gains[id] = (float) gain;
+        }
+    }
+
+    /**
+     * Gets the frame at which playback of a bol starts
+     */
+    public int getOnsetFrame(int bolId) { return onsetFrames[bolId]; }
+
+    /**
+     * Gets the frame (exclusive) at which playback of a bol stops
+     */
+    public int getTailFrame(int bolId) { return tailFrames[bolId]; }
+
+    /**
+     * Gets the linear gain a bol is played at
+     */
+    public float getGain(int bolId) { return gains[bolId]; }
+
+    public float getPeak(int bolId) { return peaks[bolId]; }
+    public float getRms(int bolId) { return rmsLevels[bolId]; }
+
+    /**
+     * Gets the integrated loudness of a bol in LUFS, or negative infinity if it was not measured
+     */
+    public float getLoudness(int bolId) { return loudness[bolId]; }
+
+    /**
+     * Gets the leading silence skipped for a bol in milliseconds
+     */
+    public double getOnsetMs(int bolId) {
+        return format.framesToMs(onsetFrames[bolId]);
+    }
+}
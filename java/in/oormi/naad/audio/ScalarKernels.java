@@ -0,0 +1,24 @@
+package in.oormi.naad.audio;
+
+/**
+ * Plain Java mixer kernels; the reference every other implementation must match bit for bit.
+ */
+final class ScalarKernels implements MixKernels {
+
+    @Override
+    public void mixAdd(float[] src, int srcOffset, float[] dst, int dstOffset, int count, float gain) {
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] += src[srcOffset + i] * gain;
+        }
+    }
+
+    @Override
+    public void encode16(float[] src, int srcOffset, byte[] dst, int dstOffset, int samples) {
+        PcmCodec.encode16(src, srcOffset, dst, dstOffset, samples);
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
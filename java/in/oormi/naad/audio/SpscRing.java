@@ -0,0 +1,108 @@
+package in.oormi.naad.audio;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free single-producer/single-consumer ring of preallocated, reusable slots.
+ * The producer claims the next free slot, fills it in place and publishes it; the consumer
+ * peeks the oldest published slot, reads it in place and advances. Indices are handed over
+ * with release stores and acquire loads, so the slot contents written before publish are
+ * visible to the consumer, and a slot is only reused after the consumer has released it.
+ * Neither side ever blocks or allocates. With more than one producer (or consumer), callers
+ * must serialize that side themselves.
+ */
+public class SpscRing<T> {
+
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(SpscRing.class, "head", long.class);
+            TAIL = lookup.findVarHandle(SpscRing.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Object[] slots;
+    private final int mask;
+
+    // Next slot to consume; written only by the consumer
+    private long head = 0;
+    // Next slot to fill; written only by the producer
+    private long tail = 0;
+    // Each side's last view of the other index, so it rereads the shared field only when needed
+    private long producerHeadCache = 0;
+    private long consumerTailCache = 0;
+
+    /**
+     * Creates a ring with the given capacity (rounded up to a power of two), filled from the factory
+     */
+    public SpscRing(int capacity, Supplier<T> factory) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ring capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.slots = new Object[size];
+        this.mask = size - 1;
+        for (int x = 0; x < size; x++) {
+            slots[x] = factory.get();
+        }
+    }
+
+    /**
+     * Producer: gets the next free slot to fill, or null if the ring is full.
+     * The slot is not visible to the consumer until publish is called.
+     */
+    @SuppressWarnings("unchecked")
+    public T claim() {
+        long t = tail;
+        if (t - producerHeadCache >= slots.length) {
+            producerHeadCache = (long) HEAD.getAcquire(this);
+            if (t - producerHeadCache >= slots.length) return null;
+        }
+        return (T) slots[(int) t & mask];
+    }
+
+    /**
+     * Producer: makes the slot returned by the last claim visible to the consumer
+     */
+    public void publish() {
+        TAIL.setRelease(this, tail + 1);
+    }
+
+    /**
+     * Consumer: gets the oldest published slot, or null if the ring is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        long h = head;
+        if (h >= consumerTailCache) {
+            consumerTailCache = (long) TAIL.getAcquire(this);
+            if (h >= consumerTailCache) return null;
+        }
+        return (T) slots[(int) h & mask];
+    }
+
+    /**
+     * Consumer: hands the slot returned by the last peek back to the producer
+     */
+    public void advance() {
+        HEAD.setRelease(this, head + 1);
+    }
+
+    /**
+     * Gets the number of published, unconsumed slots; only approximate while both sides are active
+     */
+    public int size() {
+        return (int) ((long) TAIL.getAcquire(this) - (long) HEAD.getAcquire(this));
+    }
+
+    public boolean isEmpty() { return size() == 0; }
+    public int capacity() { return slots.length; }
+}
@@ -0,0 +1,365 @@
+package in.oormi.naad.audio;
+
+import in.oormi.naad.core.Composition;
+import in.oormi.naad.core.Loop;
+import in.oormi.naad.core.Sequence;
+import in.oormi.naad.core.TempoRamp;
+import in.oormi.naad.core.VariationAssigner;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A playback plan compiled to the audio frame clock.
+ * Each segment is one compiled Sequence with its tempo and repeat count converted to frames once,
+ * its accent gains looked up once per bol position from the bols' Sam/Tali/Khali status, and
+ * the sample variation of every hit chosen up front by a VariationAssigner.
+ * Segment starts are kept as exact fractional frames, so rounding never accumulates across loops.
+ * A loop whose tempo ramps places each bol at the closed-form integral of its tempo curve.
+ * Segments can be muted, soloed and have bols replaced in place; while a timeline plays, these
+ * changes are made through AudioEngine so they are applied on the render thread.
+ */
+public class Timeline {
+
+    /** Passes of a loop given their own variations; longer loops cycle through these */
+    public static final int MAX_VARIATION_PASSES = 16;
+
+    /**
+     * One compiled loop on the timeline
+     */
+    public static class Segment {
+        private final int[] bolIds;
+        private final int bolCount;
+        private final int[] bolId2s;
+        private final float[] gains;
+        private final float[] gain2s;
+        private final int repeats;
+        private final double framesPerBol;
+        private final TempoRamp ramp;
+        private final double framesPerMs;
+        private final double startFrame;
+        private final AccentProfile accents;
+        private boolean muted = false;
+        private boolean solo = false;
+
+        Segment(int[] bolIds, int bolCount, int[] bolId2s, float[] gains, float[] gain2s, int repeats,
+                double framesPerBol, TempoRamp ramp, double framesPerMs, double startFrame, AccentProfile accents) {
+            this.bolIds = bolIds;
+            this.bolCount = bolCount;
+            this.bolId2s = bolId2s;
+            this.gains = gains;
+            this.gain2s = gain2s;
+            this.repeats = repeats;
+            this.framesPerBol = framesPerBol;
+            this.ramp = ramp;
+            this.framesPerMs = framesPerMs;
+            this.startFrame = startFrame;
+            this.accents = accents;
+        }
+
+        /**
+         * Gets the frame of an event within this segment, relative to the start of the timeline
+         */
+        public long getEventFrame(int event) {
+            if (ramp != null) {
+                return Math.round(startFrame + ramp.getTimeMs(event) * framesPerMs);
+            }
+            return Math.round(startFrame + event * framesPerBol);
+        }
+
+        /**
+         * Gets the bol variation played by an event
+         */
+        public int getBolIdAt(int event) { return bolIds[event % bolIds.length]; }
+
+        /**
+         * Gets the additional bol struck together with the bol of an event, or BOL_NONE
+         */
+        public int getBolId2At(int event) { return bolId2s[event % bolId2s.length]; }
+
+        /**
+         * Gets the accent gain of the bol of an event
+         */
+        public float getGainAt(int event) { return gains[event % gains.length]; }
+
+        /**
+         * Gets the accent gain of the additional bol of an event
+         */
+        public float getGain2At(int event) { return gain2s[event % gain2s.length]; }
+        public int getEventCount() { return bolCount * repeats; }
+        public int getBolCount() { return bolCount; }
+
+        /**
+         * Gets the number of events after which the played variations repeat: whole passes of the loop
+         */
+        public int getCycleLength() { return bolIds.length; }
+        public int getRepeats() { return repeats; }
+        /**
+         * Gets the bol spacing in frames; the average spacing if the tempo ramps
+         */
+        public double getFramesPerBol() {
+            int events = getEventCount();
+            return ramp == null || events == 0 ? framesPerBol : (getEndFrame() - startFrame) / events;
+        }
+
+        /**
+         * Gets the tempo curve of this segment, or null if it plays at a steady tempo
+         */
+        public TempoRamp getTempoRamp() { return ramp; }
+        public double getStartFrame() { return startFrame; }
+        public double getEndFrame() {
+            if (ramp != null) {
+                return startFrame + ramp.getDurationMs() * framesPerMs;
+            }
+            return startFrame + getEventCount() * framesPerBol;
+        }
+
+        /**
+         * Replaces the bol at a position of the loop, in every repeat, with its accent gains.
+         * Variations holds the variation each pass plays, one per pass of getCycleLength().
+         */
+        public void setBolAt(int position, int[] variations, int bolId2, float gain, float gain2) {
+            if (position < 0 || position >= bolCount) {
+                throw new IllegalArgumentException("Bol position out of range: " + position);
+            }
+            if (variations.length * bolCount != bolIds.length) {
+                throw new IllegalArgumentException("Need one variation per pass: " + variations.length);
+            }
+            for (int pass = 0; pass < variations.length; pass++) {
+                bolIds[pass * bolCount + position] = variations[pass];
+            }
+            bolId2s[position] = bolId2;
+            gains[position] = gain;
+            gain2s[position] = gain2;
+        }
+
+        /**
+         * Gets the accent profile the segment's gains were looked up in
+         */
+        public AccentProfile getAccents() { return accents; }
+        public boolean isMuted() { return muted; }
+        public boolean isSolo() { return solo; }
+    }
+
+    private final EngineFormat format;
+    private final AccentProfile accents;
+    private final List<Segment> segments = new ArrayList<>();
+    private VariationAssigner variations;
+    private double endFrame = 0.0;
+    private int soloCount = 0;
+
+    public Timeline(EngineFormat format) {
+        this(format, AccentProfile.DEFAULT);
+    }
+
+    /**
+     * Creates an empty timeline whose loops are accented with the given profile unless one is passed per loop
+     */
+    public Timeline(EngineFormat format, AccentProfile accents) {
+        this.format = format;
+        this.accents = accents;
+    }
+
+    /**
+     * Compiles a single sequence played at a fixed tempo (one bol per beat)
+     */
+    public static Timeline fromSequence(Sequence sequence, double bpm, EngineFormat format) {
+        Timeline timeline = new Timeline(format);
+        timeline.addSequence(sequence, format.framesPerBeat(bpm));
+        return timeline;
+    }
+
+    /**
+     * Compiles a loop with its own tempo and repeat count
+     */
+    public static Timeline fromLoop(Loop loop, EngineFormat format) {
+        Timeline timeline = new Timeline(format);
+        timeline.addLoop(loop);
+        return timeline;
+    }
+
+    /**
+     * Compiles a composition in its loop sequence order, or in list order if no sequence is set
+     */
+    public static Timeline fromComposition(Composition composition, EngineFormat format) {
+        return fromComposition(composition, format, AccentProfile.DEFAULT);
+    }
+
+    /**
+     * Compiles a composition with the accents of a taal
+     */
+    public static Timeline fromComposition(Composition composition, EngineFormat format, AccentProfile accents) {
+        Timeline timeline = new Timeline(format, accents);
+        timeline.addComposition(composition);
+        return timeline;
+    }
+
+    /**
+     * Appends the loops of a composition in its loop sequence order, or in list order if no sequence is set
+     */
+    public void addComposition(Composition composition) {
+        int[] order = composition.getLoopSequence();
+        if (order != null) {
+            for (int loopIndex : order) {
+                Loop loop = composition.getLoopAt(loopIndex);
+                if (loop != null) addLoop(loop);
+            }
+        } else {
+            for (Loop loop : composition.getLoops()) {
+                addLoop(loop);
+            }
+        }
+    }
+
+    /**
+     * Sets the assigner that picks sample variations for sequences added from now on;
+     * without one, each bol plays the variation stored in its sequence
+     */
+    public void setVariationAssigner(VariationAssigner variations) {
+        this.variations = variations;
+    }
+
+    /**
+     * Appends a loop after everything already on the timeline
+     */
+    public void addLoop(Loop loop) {
+        addLoop(loop, accents);
+    }
+
+    /**
+     * Appends a loop accented with the profile of its own taal
+     */
+    public void addLoop(Loop loop, AccentProfile loopAccents) {
+        Sequence sequence = new Sequence();
+        sequence.createBolSequence(loop);
+        if (loop.isRamped()) {
+            addSequence(sequence, loop.getTempoRamp(), loopAccents);
+        } else {
+            addSequence(sequence, format.msToFrames(loop.getBeatDurationMs()), loopAccents);
+        }
+    }
+
+    /**
+     * Appends a compiled sequence with the given bol spacing in frames
+     */
+    public void addSequence(Sequence sequence, double framesPerBol) {
+        addSequence(sequence, framesPerBol, accents);
+    }
+
+    /**
+     * Appends a compiled sequence with the given bol spacing in frames and accent profile
+     */
+    public void addSequence(Sequence sequence, double framesPerBol, AccentProfile sequenceAccents) {
+        if (framesPerBol <= 0) {
+            throw new IllegalArgumentException("Invalid bol duration: " + framesPerBol + " frames");
+        }
+        addSegment(sequence, framesPerBol, null, sequenceAccents);
+    }
+
+    /**
+     * Appends a compiled sequence whose tempo follows a ramp over all of its repeats, one bol per beat
+     */
+    public void addSequence(Sequence sequence, TempoRamp ramp, AccentProfile sequenceAccents) {
+        double beats = (double) sequence.getBolSeqCount() * sequence.getRepeatSeqCount();
+        TempoRamp spanned = new TempoRamp(ramp.getStartBpm(), ramp.getEndBpm(), ramp.getCurve(), beats);
+        addSegment(sequence, format.framesPerBeat(ramp.getStartBpm()), spanned.isRamped() ? spanned : null,
+                sequenceAccents);
+    }
+
+    private void addSegment(Sequence sequence, double framesPerBol, TempoRamp ramp, AccentProfile sequenceAccents) {
+        if (!sequence.isValid()) return;
+
+        int[] bolIds = sequence.getBolIdSequence();
+        int[] status = sequence.getBolStatusSequence();
+        float[] gains = new float[status.length];
+        float[] gain2s = new float[status.length];
+        for (int x = 0; x < status.length; x++) {
+            gains[x] = sequenceAccents.getPrimaryGain(bolIds[x], status[x]);
+            gain2s[x] = sequenceAccents.getAdditionalGain(status[x]);
+        }
+
+        Segment segment = new Segment(assignVariations(sequence), bolIds.length, sequence.getBolId2Sequence(),
+                gains, gain2s, sequence.getRepeatSeqCount(), framesPerBol, ramp, format.msToFrames(1.0), endFrame,
+                sequenceAccents);
+        segments.add(segment);
+        endFrame = segment.getEndFrame();
+    }
+
+    /**
+     * Gets the variation played by each event of a sequence. With an assigner, every pass of the
+     * loop (up to MAX_VARIATION_PASSES) gets its own choices, so repeats do not replay the same samples.
+     */
+    private int[] assignVariations(Sequence sequence) {
+        if (variations == null || variations.getMode() == VariationAssigner.Mode.FIXED) {
+            return sequence.getBolVarSequence();
+        }
+
+        int bols = sequence.getBolSeqCount();
+        int passes = Math.min(sequence.getRepeatSeqCount(), MAX_VARIATION_PASSES);
+        int[] played = new int[bols * passes];
+        for (int pass = 0; pass < passes; pass++) {
+            variations.assign(sequence);
+            System.arraycopy(sequence.getBolVarSequence(), 0, played, pass * bols, bols);
+        }
+        return played;
+    }
+
+    /**
+     * Gets the variation each pass of a segment plays for a bol written at one of its positions,
+     * continuing the rotation of the passes assigned when the timeline was compiled. The choices
+     * come from a copy of the assigner, so an edit neither advances it nor races with other callers.
+     */
+    int[] assignVariations(Segment segment, int bolId) {
+        VariationAssigner choices = variations == null ? null : variations.copy();
+        int[] played = new int[segment.getCycleLength() / segment.getBolCount()];
+        for (int pass = 0; pass < played.length; pass++) {
+            played[pass] = choices == null ? bolId : choices.next(bolId);
+        }
+        return played;
+    }
+
+    /**
+     * Gets the total number of bol events on the timeline
+     */
+    public int getEventCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.getEventCount();
+        }
+        return count;
+    }
+
+    /**
+     * Mutes or unmutes a segment; a muted segment keeps its time but queues no bols
+     */
+    public void setMuted(int index, boolean muted) {
+        segments.get(index).muted = muted;
+    }
+
+    /**
+     * Solos or unsolos a segment; while any segment is soloed, only soloed segments are heard
+     */
+    public void setSolo(int index, boolean solo) {
+        Segment segment = segments.get(index);
+        if (segment.solo == solo) return;
+        segment.solo = solo;
+        soloCount += solo ? 1 : -1;
+    }
+
+    /**
+     * Checks whether the bols of a segment are heard, given mutes and solos
+     */
+    public boolean isAudible(int index) {
+        Segment segment = segments.get(index);
+        return !segment.muted && (soloCount == 0 || segment.solo);
+    }
+
+    public Segment getSegment(int index) { return segments.get(index); }
+    public int getSegmentCount() { return segments.size(); }
+    public List<Segment> getSegments() { return Collections.unmodifiableList(segments); }
+    public long getEndFrame() { return Math.round(endFrame); }
+    public double getDurationMs() { return endFrame * 1000.0 / format.getSampleRate(); }
+    public EngineFormat getFormat() { return format; }
+    public AccentProfile getAccents() { return accents; }
+    public VariationAssigner getVariationAssigner() { return variations; }
+}
@@ -0,0 +1,138 @@
+package in.oormi.naad.audio;
+
+/**
+ * One playing instance of a sample inside the mixer.
+ * Voices are preallocated and reused, never created per hit.
+ */
+class Voice {
+
+    private static final MixKernels KERNELS = MixKernels.get();
+
+    private PcmSample sample;
+    private int position;
+    private int begin;
+    private int end;
+    private float gain;
+    private int startOffset;
+    private long serial;
+    private int fadeFrames;
+    private int fadeRemaining;
+    // Frames into the current block before a pending fade begins
+    private int fadeDelay;
+
+    /**
+     * Starts this voice at a frame offset within the current block, playing frames [begin, end) of the sample
+     */
+    void start(PcmSample sample, int begin, int end, float gain, int startOffset, long serial) {
+        this.sample = sample;
+        this.position = begin;
+        this.begin = begin;
+        this.end = Math.min(end, sample.getFrames());
+        this.gain = gain;
+        this.startOffset = startOffset;
+        this.serial = serial;
+        this.fadeFrames = 0;
+        this.fadeRemaining = 0;
+        this.fadeDelay = 0;
+    }
+
+    /**
+     * Takes over the playing state of another voice and fades it out over the given frames.
+     * A voice started in the current block keeps its start offset, and one that is already
+     * fading carries on down from its current level instead of jumping back to full gain.
+     */
+    void release(Voice from, int frames) {
+        this.sample = from.sample;
+        this.position = from.position;
+        this.begin = from.begin;
+        this.end = from.end;
+        this.startOffset = from.startOffset;
+        this.serial = from.serial;
+        if (from.fadeFrames > 0) {
+            this.gain = from.gain * from.fadeRemaining / from.fadeFrames;
+            this.fadeFrames = Math.max(1, Math.min(frames, from.fadeRemaining));
+        } else {
+            this.gain = from.gain;
+            this.fadeFrames = frames;
+        }
+        this.fadeRemaining = this.fadeFrames;
+        this.fadeDelay = 0;
+    }
+
+    /**
+     * Fades this voice out over the given frames, starting at a frame offset within the current block.
+     * A voice that is already fading keeps its fade.
+     */
+    void fadeOut(int frames, int delay) {
+        if (sample == null || fadeFrames > 0) return;
+        this.fadeFrames = frames;
+        this.fadeRemaining = frames;
+        this.fadeDelay = delay;
+    }
+
+    /**
+     * Mixes the next block of this voice into the output buffer
+     */
+    void mix(float[] out, int frames, int channels) {
+        float[] data = sample.getData();
+        int remaining = end - position;
+        int n = Math.min(frames - startOffset, remaining);
+
+        int src = position * channels;
+        int dst = startOffset * channels;
+        // Frames before a pending fade play at full gain
+        int held = fadeFrames == 0 ? n : Math.min(n, Math.max(0, fadeDelay - startOffset));
+        if (held > 0) {
+            KERNELS.mixAdd(data, src, out, dst, held * channels, gain);
+            src += held * channels;
+            dst += held * channels;
+            position += held;
+        }
+        if (fadeFrames > 0) {
+            int faded = Math.min(n - held, fadeRemaining);
+            float step = gain / fadeFrames;
+            float g = fadeRemaining * step;
+            for (int f = 0; f < faded; f++) {
+                for (int c = 0; c < channels; c++) {
+                    out[dst + c] += data[src + c] * g;
+                }
+                src += channels;
+                dst += channels;
+                g -= step;
+            }
+            fadeRemaining -= faded;
+            position += faded;
+        }
+
+        startOffset = 0;
+        fadeDelay = 0;
+        if (position >= end || (fadeFrames > 0 && fadeRemaining <= 0)) {
+            sample = null;
+        }
+    }
+
+    void stop() {
+        sample = null;
+    }
+
+    boolean isActive() {
+        return sample != null;
+    }
+
+    /**
+     * Gets the order in which this voice was triggered; lower is older
+     */
+    long getSerial() {
+        return serial;
+    }
+
+    /**
+     * Gets the current level of the voice, used when stealing the quietest one
+     */
+    float getLevel() {
+        if (sample == null) return 0.0f;
+        // A hit that has not sounded yet is never the quietest, whatever its first frames look like
+        if (position == begin) return Float.MAX_VALUE;
+        return sample.getLevelAt(position) * gain;
+    }
+}
@@ -0,0 +1,154 @@
+package in.oormi.naad.audio;
+
+/**
+ * Fixed-size pool of preallocated voices.
+ * The same sample can ring on several voices at once, so fast repeats ("Ti Ti", "Ge Ge")
+ * overlap instead of cutting each other off. When every voice is busy one is stolen
+ * according to the steal policy and faded out briefly to avoid a click.
+ */
+public class VoicePool {
+
+    public static final int DEFAULT_VOICES = 32;
+    public static final int RELEASE_VOICES = 8;
+    public static final int STEAL_FADE_FRAMES = 64;
+
+    /**
+     * How to pick a voice when the pool is full
+     */
+    public enum StealPolicy {
+        OLDEST,
+        QUIETEST,
+        NONE
+    }
+
+    private final Voice[] voices;
+    private final Voice[] releasing = new Voice[RELEASE_VOICES];
+    private final StealPolicy policy;
+    private long serial = 0;
+    private int stolenCount = 0;
+    private int droppedCount = 0;
+
+    public VoicePool() {
+        this(DEFAULT_VOICES, StealPolicy.OLDEST);
+    }
+
+    public VoicePool(int size, StealPolicy policy) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Voice pool size must be positive: " + size);
+        }
+        this.policy = policy;
+        this.voices = new Voice[size];
+        for (int x = 0; x < size; x++) {
+            voices[x] = new Voice();
+        }
+        for (int x = 0; x < RELEASE_VOICES; x++) {
+            releasing[x] = new Voice();
+        }
+    }
+
+    /**
+     * Starts a whole sample at a frame offset within the current block
+     */
+    public void trigger(PcmSample sample, int offset) {
+        trigger(sample, 0, sample.getFrames(), 1.0f, offset);
+    }
+
+    /**
+     * Starts frames [begin, end) of a sample at a gain, at a frame offset within the current block
+     */
+    public void trigger(PcmSample sample, int begin, int end, float gain, int offset) {
+        Voice voice = findFree();
+        if (voice == null) {
+            voice = findVictim();
+            if (voice == null) {
+                droppedCount++;
+                return;
+            }
+            fadeOut(voice);
+            stolenCount++;
+        }
+        voice.start(sample, begin, end, gain, offset, serial++);
+    }
+
+    /**
+     * Mixes every active voice into the block
+     */
+    public void mix(float[] out, int frames, int channels) {
+        for (Voice voice : voices) {
+            if (voice.isActive()) voice.mix(out, frames, channels);
+        }
+        for (Voice voice : releasing) {
+            if (voice.isActive()) voice.mix(out, frames, channels);
+        }
+    }
+
+    /**
+     * Silences every voice immediately
+     */
+    public void stopAll() {
+        for (Voice voice : voices) voice.stop();
+        for (Voice voice : releasing) voice.stop();
+    }
+
+    /**
+     * Fades out every ringing voice over the given frames, starting at a frame offset within the current block
+     */
+    public void fadeOutAll(int frames, int offset) {
+        for (Voice voice : voices) voice.fadeOut(frames, offset);
+        for (Voice voice : releasing) voice.fadeOut(frames, offset);
+    }
+
+    public int getActiveCount() {
+        int count = 0;
+        for (Voice voice : voices) {
+            if (voice.isActive()) count++;
+        }
+        for (Voice voice : releasing) {
+            if (voice.isActive()) count++;
+        }
+        return count;
+    }
+
+    private Voice findFree() {
+        for (Voice voice : voices) {
+            if (!voice.isActive()) return voice;
+        }
+        return null;
+    }
+
+    private Voice findVictim() {
+        // Compared directly rather than switched on: an enum switch loads a helper class on its
+        // first use, which would allocate on the render thread at the first steal
+        Voice victim = null;
+        if (policy == StealPolicy.OLDEST) {
+            for (Voice voice : voices) {
+                if (victim == null || voice.getSerial() < victim.getSerial()) victim = voice;
+            }
+        } else if (policy == StealPolicy.QUIETEST) {
+            for (Voice voice : voices) {
+                if (victim == null || voice.getLevel() < victim.getLevel()) victim = voice;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Hands a stolen voice's tail to a release slot so it fades instead of clicking
+     */
+    private void fadeOut(Voice voice) {
+        Voice target = null;
+        for (Voice r : releasing) {
+            if (!r.isActive()) {
+                target = r;
+                break;
+            }
+            if (target == null || r.getSerial() < target.getSerial()) target = r;
+        }
+        target.release(voice, STEAL_FADE_FRAMES);
+    }
+
+    public int getSize() { return voices.length; }
+    public StealPolicy getPolicy() { return policy; }
+    public int getStolenCount() { return stolenCount; }
+    public int getDroppedCount() { return droppedCount; }
+}
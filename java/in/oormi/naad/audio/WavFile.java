@@ -0,0 +1,156 @@
+package in.oormi.naad.audio;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped RIFF/WAVE reader.
+ * Walks the chunk list (skipping cue, LIST, smpl and any other chunks) and exposes the
+ * PCM data chunk as a read-only view over the mapped file, without copying it.
+ */
+public class WavFile {
+
+    public static final int FORMAT_PCM = 1;
+    public static final int FORMAT_IEEE_FLOAT = 3;
+    public static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private static final int RIFF = 0x46464952; // "RIFF" read little-endian
+    private static final int WAVE = 0x45564157; // "WAVE"
+    private static final int FMT = 0x20746D66;  // "fmt "
+    private static final int DATA = 0x61746164; // "data"
+
+    private final Path path;
+    private final int formatTag;
+    private final int channels;
+    private final int sampleRate;
+    private final int bitsPerSample;
+    private final int blockAlign;
+    private final ByteBuffer data;
+
+    private WavFile(Path path, int formatTag, int channels, int sampleRate,
+                    int bitsPerSample, int blockAlign, ByteBuffer data) {
+        this.path = path;
+        this.formatTag = formatTag;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.bitsPerSample = bitsPerSample;
+        this.blockAlign = blockAlign;
+        this.data = data;
+    }
+
+    /**
+     * Maps a WAV file and locates its fmt and data chunks
+     */
+    public static WavFile open(Path path) throws IOException, UnsupportedAudioFileException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return parse(path, map);
+    }
+
+    /**
+     * Parses a RIFF/WAVE image that is already in memory
+     */
+    public static WavFile parse(Path path, ByteBuffer buffer) throws UnsupportedAudioFileException {
+        ByteBuffer riff = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (riff.remaining() < 12 || riff.getInt(0) != RIFF || riff.getInt(8) != WAVE) {
+            throw new UnsupportedAudioFileException("Not a RIFF/WAVE file: " + path);
+        }
+
+        int formatTag = -1;
+        int channels = 0;
+        int sampleRate = 0;
+        int bitsPerSample = 0;
+        int blockAlign = 0;
+        ByteBuffer data = null;
+
+        int pos = 12;
+        int limit = riff.limit();
+        while (pos + 8 <= limit) {
+            int id = riff.getInt(pos);
+            long size = riff.getInt(pos + 4) & 0xFFFFFFFFL;
+            int body = pos + 8;
+            // Truncated files are common; clamp the last chunk to what is actually there
+            int available = (int) Math.min(size, limit - body);
+
+            if (id == FMT && available >= 16) {
+                formatTag = riff.getShort(body) & 0xFFFF;
+                channels = riff.getShort(body + 2) & 0xFFFF;
+                sampleRate = riff.getInt(body + 4);
+                blockAlign = riff.getShort(body + 12) & 0xFFFF;
+                bitsPerSample = riff.getShort(body + 14) & 0xFFFF;
+                if (formatTag == FORMAT_EXTENSIBLE && available >= 26) {
+                    // The real format tag is the first two bytes of the SubFormat GUID
+                    formatTag = riff.getShort(body + 24) & 0xFFFF;
+                }
+            } else if (id == DATA) {
+                data = riff.duplicate().position(body).limit(body + available)
+                        .slice().order(ByteOrder.LITTLE_ENDIAN).asReadOnlyBuffer();
+            }
+
+            // Chunks are word aligned
+            long next = body + size + (size & 1);
+            if (next > limit) break;
+            pos = (int) next;
+        }
+
+        if (formatTag < 0) {
+            throw new UnsupportedAudioFileException("Missing fmt chunk: " + path);
+        }
+        if (data == null) {
+            throw new UnsupportedAudioFileException("Missing data chunk: " + path);
+        }
+        boolean pcm = formatTag == FORMAT_PCM && (bitsPerSample == 8 || bitsPerSample == 16
+                || bitsPerSample == 24 || bitsPerSample == 32);
+        boolean ieee = formatTag == FORMAT_IEEE_FLOAT && bitsPerSample == 32;
+        if (!pcm && !ieee || channels <= 0 || blockAlign != channels * bitsPerSample / 8) {
+            throw new UnsupportedAudioFileException("Unsupported WAV encoding in " + path
+                    + " (format " + formatTag + ", " + bitsPerSample + " bit, " + channels + " ch)");
+        }
+        return new WavFile(path, formatTag, channels, sampleRate, bitsPerSample, blockAlign, data);
+    }
+
+    /**
+     * Decodes the data chunk into interleaved floats in the file's own channel layout
+     */
+    public float[] decode() {
+        float[] out = new float[getFrames() * channels];
+        PcmCodec.decode(data.duplicate().order(ByteOrder.LITTLE_ENDIAN), bitsPerSample,
+                formatTag == FORMAT_IEEE_FLOAT, out, 0, out.length);
+        return out;
+    }
+
+    /**
+     * Gets a read-only little-endian view of the PCM data chunk
+     */
+    public ByteBuffer getData() {
+        return data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int getFrames() { return data.capacity() / blockAlign; }
+    public Path getPath() { return path; }
+    public int getFormatTag() { return formatTag; }
+    public int getChannels() { return channels; }
+    public int getSampleRate() { return sampleRate; }
+    public int getBitsPerSample() { return bitsPerSample; }
+    public int getBlockAlign() { return blockAlign; }
+    public boolean isFloat() { return formatTag == FORMAT_IEEE_FLOAT; }
+
+    @Override
+    public String toString() {
+        return "WavFile{" +
+                "path=" + path +
+                ", channels=" + channels +
+                ", sampleRate=" + sampleRate +
+                ", bitsPerSample=" + bitsPerSample +
+                ", frames=" + getFrames() +
+                '}';
+    }
+}
@@ -0,0 +1,108 @@
+package in.oormi.naad.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams interleaved float audio to a channel as a WAV file, one block at a time.
+ * Memory use is one fixed encode buffer regardless of length. On a seekable channel the
+ * RIFF and data sizes are back-patched on close; on a pure stream they are left at the
+ * 0xFFFFFFFF "unknown length" value that streaming WAV readers accept.
+ */
+public class WavStreamWriter implements AutoCloseable {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final long UNKNOWN_SIZE = 0xFFFFFFFFL;
+
+    private final WritableByteChannel out;
+    private final EngineFormat format;
+    private final WavWriter.Encoding encoding;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final long headerPosition;
+    private long framesWritten = 0;
+    private boolean closed = false;
+
+    /**
+     * Writes a provisional header at the channel's current position
+     */
+    public WavStreamWriter(WritableByteChannel out, EngineFormat format, WavWriter.Encoding encoding)
+            throws IOException {
+        this.out = out;
+        this.format = format;
+        this.encoding = encoding;
+        this.headerPosition = out instanceof SeekableByteChannel ? ((SeekableByteChannel) out).position() : -1;
+
+        buffer.clear();
+        WavWriter.putHeader(buffer, format, encoding, UNKNOWN_SIZE);
+        buffer.flip();
+        WavWriter.writeFully(out, buffer);
+    }
+
+    /**
+     * Encodes and writes the first frames of an interleaved block
+     */
+    public void write(float[] data, int offsetFrames, int frames) throws IOException {
+        int channels = format.getChannels();
+        long newBytes = (framesWritten + frames) * channels * (long) encoding.getBytesPerSample();
+        if (newBytes + WavWriter.HEADER_BYTES - 8 >= UNKNOWN_SIZE) {
+            throw new IOException("Audio too long for a WAV file: " + (framesWritten + frames) + " frames");
+        }
+
+        int samplesPerBuffer = BUFFER_BYTES / encoding.getBytesPerSample();
+        int start = offsetFrames * channels;
+        int total = frames * channels;
+        for (int pos = 0; pos < total; pos += samplesPerBuffer) {
+            int n = Math.min(samplesPerBuffer, total - pos);
+            buffer.clear();
+            PcmCodec.encode(data, start + pos, n, encoding, buffer);
+            buffer.flip();
+            WavWriter.writeFully(out, buffer);
+        }
+        framesWritten += frames;
+    }
+
+    /**
+     * Back-patches the header sizes when the channel allows it; does not close the channel
+     */
+    public void finish() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (headerPosition < 0) return;
+
+        SeekableByteChannel seekable = (SeekableByteChannel) out;
+        long end = seekable.position();
+        long dataBytes = getDataBytes();
+
+        ByteBuffer patch = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        patch.putInt(0, (int) (dataBytes + WavWriter.HEADER_BYTES - 8));
+        seekable.position(headerPosition + 4);
+        WavWriter.writeFully(seekable, patch);
+
+        patch.clear();
+        patch.putInt(0, (int) dataBytes);
+        seekable.position(headerPosition + WavWriter.HEADER_BYTES - 4);
+        WavWriter.writeFully(seekable, patch);
+        seekable.position(end);
+    }
+
+    /**
+     * Finishes the file and closes the channel
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    public long getDataBytes() {
+        return framesWritten * format.getChannels() * (long) encoding.getBytesPerSample();
+    }
+
+    public long getFramesWritten() { return framesWritten; }
+}
@@ -0,0 +1,79 @@
+package in.oormi.naad.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes interleaved float audio as a RIFF/WAVE file in 16-bit PCM or 32-bit float.
+ */
+public final class WavWriter {
+
+    public static final int HEADER_BYTES = 44;
+
+    /**
+     * Sample encoding of the written file
+     */
+    public enum Encoding {
+        PCM_16(WavFile.FORMAT_PCM, 16),
+        FLOAT_32(WavFile.FORMAT_IEEE_FLOAT, 32);
+
+        private final int formatTag;
+        private final int bitsPerSample;
+
+        Encoding(int formatTag, int bitsPerSample) {
+            this.formatTag = formatTag;
+            this.bitsPerSample = bitsPerSample;
+        }
+
+        public int getFormatTag() { return formatTag; }
+        public int getBitsPerSample() { return bitsPerSample; }
+        public int getBytesPerSample() { return bitsPerSample / 8; }
+    }
+
+    private WavWriter() {
+    }
+
+    /**
+     * Writes the first frames of an interleaved buffer to a WAV file
+     */
+    public static void write(Path path, float[] data, int frames, EngineFormat format, Encoding encoding)
+            throws IOException {
+        try (WavStreamWriter writer = new WavStreamWriter(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), format, encoding)) {
+            writer.write(data, 0, frames);
+        }
+    }
+
+    /**
+     * Puts a canonical 44-byte WAV header describing dataBytes of audio
+     */
+    public static void putHeader(ByteBuffer header, EngineFormat format, Encoding encoding, long dataBytes) {
+        int channels = format.getChannels();
+        int blockAlign = channels * encoding.getBytesPerSample();
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt((int) Math.min(dataBytes + HEADER_BYTES - 8, 0xFFFFFFFFL));
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(16);
+        header.putShort((short) encoding.getFormatTag());
+        header.putShort((short) channels);
+        header.putInt(format.getSampleRate());
+        header.putInt(format.getSampleRate() * blockAlign);
+        header.putShort((short) blockAlign);
+        header.putShort((short) encoding.getBitsPerSample());
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt((int) dataBytes);
+    }
+
+    static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
@@ -31,6 +31,7 @@ public class SettingsManager {
         putIfAbsent("ui.theme", "default");
         putIfAbsent("file.defaultSaveLocation", "./compositions");
         putIfAbsent("audio.samplePath", "./samples");
+        putIfAbsent("audio.sink", "javasound");
         putIfAbsent("playback.autoplay", false);
         putIfAbsent("composition.autoBackup", true);
     }
@@ -1,43 +1,77 @@
 package com.naad.sound;
 
+import in.oormi.naad.audio.AudioEngine;
+import in.oormi.naad.audio.JitterHistogram;
+import in.oormi.naad.core.Bol;
+import in.oormi.naad.core.Sequence;
+
+import javax.sound.sampled.LineUnavailableException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class SequencePlayer {
-    private final List<String> sequence;
+    private static AudioEngine defaultEngine;
+
+    private final List<Bol> sequence;
     private final int tempo; // milliseconds per bol
+    private final AudioEngine engine;
 
     public SequencePlayer(int tempo) {
+        this(tempo, getDefaultEngine());
+    }
+
+    public SequencePlayer(int tempo, AudioEngine engine) {
         this.sequence = new ArrayList<>();
         this.tempo = tempo;
+        this.engine = engine;
+    }
+
+    // The sample bank is decoded once and shared by every player that does not bring its own engine
+    private static synchronized AudioEngine getDefaultEngine() {
+        if (defaultEngine == null) {
+            defaultEngine = new AudioEngine();
+        }
+        return defaultEngine;
     }
 
     public void addBol(String bol) {
-        this.sequence.add(bol + ".wav");
+        int bolId = Bol.findBolId(bol);
+        if (bolId == Bol.BOL_NONE) {
+            throw new IllegalArgumentException("Unknown bol: " + bol);
+        }
+        Bol b = new Bol();
+        b.setBolType(bolId);
+        this.sequence.add(b);
     }
 
     public void addPattern(String pattern) {
         String[] bols = pattern.split("\\s+");
         for (String bol : bols) {
-            this.sequence.add(bol + ".wav");
+            addBol(bol);
         }
     }
 
+    // Onset timing of everything this player's engine has played
+    public JitterHistogram getJitter() {
+        return engine.getJitter();
+    }
+
     public void play() {
-        for (String bol : sequence) {
-            System.out.println("Playing: " + bol);
-            SoundManager.play(bol);
-            try {
-                Thread.sleep(tempo);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+        loop(1);
     }
 
     public void loop(int times) {
-        for (int i = 0; i < times; i++) {
-            play();
+        // Repeats are rendered by the engine back to back, so there is no gap between passes
+        Sequence compiled = new Sequence();
+        compiled.createBolSequence(sequence, times);
+        try {
+            engine.play(compiled, 60000.0 / tempo);
+            engine.awaitCompletion();
+        } catch (LineUnavailableException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            engine.stop();
         }
     }
 }
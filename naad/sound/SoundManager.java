@@ -4,13 +4,23 @@ package com.naad.sound;
 import javax.sound.sampled.*;
 import java.io.IOException;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class SoundManager {
-    private static final Map<String, Clip> cache = new HashMap<>();
+    // Every open Clip holds a mixer line, so only the most recently played ones are kept open
+    public static final int MAX_CLIPS = 16;
 
-    public static void play(String soundFile) {
+    private static final Map<String, Clip> cache = new LinkedHashMap<String, Clip>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Clip> eldest) {
+            if (size() <= MAX_CLIPS) return false;
+            eldest.getValue().close();
+            return true;
+        }
+    };
+
+    public static synchronized void play(String soundFile) {
         try {
             Clip clip = cache.get(soundFile);
             if (clip == null) {